@@ -0,0 +1,235 @@
+package com.dsysme.trees.avl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link AvlTree} with {@link TreeMap} and {@link ConcurrentSkipListMap} on the same keys.
+ * Run with {@code mvn -P benchmark verify}, narrow it down with for example
+ * {@code -Djmh.args="AvlTreeBenchmark.lookup -p size=1000000 -prof gc"}.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AvlTreeBenchmark {
+
+    public enum Implementation {
+        AVL_TREE {
+            @Override
+            Target create() {
+                AvlTree<Integer> tree = new AvlTree<>();
+                return new Target() {
+                    @Override
+                    public void insert(Integer key) {
+                        tree.insertNode(new Node<>(key));
+                    }
+
+                    @Override
+                    public boolean contains(Integer key) {
+                        return tree.contains(key);
+                    }
+
+                    @Override
+                    public void remove(Integer key) {
+                        tree.remove(key);
+                    }
+
+                    @Override
+                    public long sum() {
+                        long sum = 0;
+                        for (Integer key : tree) {
+                            sum += key;
+                        }
+                        return sum;
+                    }
+                };
+            }
+        },
+        TREE_MAP {
+            @Override
+            Target create() {
+                return new MapTarget(new TreeMap<>());
+            }
+        },
+        SKIP_LIST {
+            @Override
+            Target create() {
+                return new MapTarget(new ConcurrentSkipListMap<>());
+            }
+        };
+
+        abstract Target create();
+    }
+
+    interface Target {
+        void insert(Integer key);
+
+        boolean contains(Integer key);
+
+        void remove(Integer key);
+
+        long sum();
+    }
+
+    static final class MapTarget implements Target {
+        private final Map<Integer, Boolean> map;
+
+        MapTarget(Map<Integer, Boolean> map) {
+            this.map = map;
+        }
+
+        @Override
+        public void insert(Integer key) {
+            map.put(key, Boolean.TRUE);
+        }
+
+        @Override
+        public boolean contains(Integer key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public void remove(Integer key) {
+            map.remove(key);
+        }
+
+        @Override
+        public long sum() {
+            long sum = 0;
+            for (Integer key : map.keySet()) {
+                sum += key;
+            }
+            return sum;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Keys {
+        @Param({"1000", "100000", "1000000", "10000000"})
+        public int size;
+
+        @Param({"RANDOM", "SEQUENTIAL", "REVERSE"})
+        public String order;
+
+        @Param({"AVL_TREE", "TREE_MAP", "SKIP_LIST"})
+        public Implementation implementation;
+
+        Integer[] keys;
+        // lookups probe random keys, half of them missing
+        Integer[] probes;
+
+        @Setup(Level.Trial)
+        public void createKeys() {
+            Random random = new Random(42);
+            keys = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = 2 * i;
+            }
+            if ("REVERSE".equals(order)) {
+                for (int i = 0; i < size; i++) {
+                    keys[i] = 2 * (size - 1 - i);
+                }
+            } else if ("RANDOM".equals(order)) {
+                for (int i = size - 1; i > 0; i--) {
+                    int other = random.nextInt(i + 1);
+                    Integer swap = keys[i];
+                    keys[i] = keys[other];
+                    keys[other] = swap;
+                }
+            }
+            probes = new Integer[1 << 16];
+            for (int i = 0; i < probes.length; i++) {
+                probes[i] = random.nextInt(2 * size);
+            }
+        }
+
+        Target populate() {
+            Target target = implementation.create();
+            for (Integer key : keys) {
+                target.insert(key);
+            }
+            return target;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Populated {
+        Target target;
+        int probe;
+
+        @Setup(Level.Trial)
+        public void populate(Keys keys) {
+            target = keys.populate();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PopulatedPerInvocation {
+        Target target;
+
+        @Setup(Level.Invocation)
+        public void populate(Keys keys) {
+            target = keys.populate();
+        }
+    }
+
+    /**
+     * Builds the whole structure, one operation is size inserts.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Target insert(Keys keys) {
+        return keys.populate();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean lookup(Keys keys, Populated populated) {
+        Integer[] probes = keys.probes;
+        return populated.target.contains(probes[populated.probe++ & (probes.length - 1)]);
+    }
+
+    /**
+     * Full in-order scan.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long iterate(Populated populated) {
+        return populated.target.sum();
+    }
+
+    /**
+     * Empties a freshly built structure in insertion order, one operation is size removals.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = 1)
+    @Measurement(iterations = 5, batchSize = 1)
+    public void delete(Keys keys, PopulatedPerInvocation populated, Blackhole blackhole) {
+        for (Integer key : keys.keys) {
+            populated.target.remove(key);
+        }
+        blackhole.consume(populated.target);
+    }
+}
@@ -0,0 +1,83 @@
+package com.dsysme.trees.avl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random lookups in a pointer based {@link AvlTree} and in its {@link FrozenAvlTree}, from sizes that fit in
+ * the L2 cache to sizes well beyond the last level cache.
+ * Run with {@code mvn -P benchmark verify -Djmh.args="FrozenAvlTreeBenchmark"}.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class FrozenAvlTreeBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private AvlTree<Integer> tree;
+    private FrozenAvlTree<Integer> frozen;
+    // half of the probes are missing
+    private Integer[] probes;
+    private int probe;
+
+    @Setup(Level.Trial)
+    public void build() {
+        List<Integer> keys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(2 * i);
+        }
+        Random random = new Random(42);
+        // random insertion order spreads the nodes over the heap like a long lived tree
+        Collections.shuffle(keys, random);
+        tree = new AvlTree<>();
+        for (Integer key : keys) {
+            tree.insertNode(new Node<>(key));
+        }
+        frozen = tree.freeze();
+        probes = new Integer[1 << 16];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = random.nextInt(2 * size);
+        }
+    }
+
+    @Benchmark
+    public boolean treeContains() {
+        return tree.contains(probes[probe++ & (probes.length - 1)]);
+    }
+
+    @Benchmark
+    public boolean frozenContains() {
+        return frozen.contains(probes[probe++ & (probes.length - 1)]);
+    }
+
+    @Benchmark
+    public Object treeFloor() {
+        return tree.floor(probes[probe++ & (probes.length - 1)]);
+    }
+
+    @Benchmark
+    public Object frozenFloor() {
+        return frozen.floor(probes[probe++ & (probes.length - 1)]);
+    }
+}
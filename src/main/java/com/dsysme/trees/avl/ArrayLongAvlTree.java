@@ -0,0 +1,447 @@
+package com.dsysme.trees.avl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * {@link LongAvlTree} whose nodes are slots in parallel primitive arrays (or in a direct buffer when built
+ * off heap) instead of individually allocated objects. A node is referred to by its slot index,
+ * {@link #NIL} stands for a missing node. Slots of removed nodes are reused by later inserts.
+ */
+public class ArrayLongAvlTree {
+
+    public static final int NIL = LongNodeStore.NIL;
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int FREE = -1;
+
+    private final LongNodeStore store;
+    private int root = NIL;
+    private int size;
+    // slots above this one were never used
+    private int nextUnused;
+    // removed slots chained through their left link
+    private int freeHead = NIL;
+
+    public ArrayLongAvlTree() {
+        this(DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * @param initialCapacity number of nodes before the first resize
+     * @param offHeap keep the nodes in direct buffers outside the java heap, which can hold up to
+     * {@link Integer#MAX_VALUE} nodes
+     */
+    public ArrayLongAvlTree(int initialCapacity, boolean offHeap) {
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + initialCapacity);
+        }
+        this.store = offHeap ? new DirectLongNodeStore(initialCapacity) : new HeapLongNodeStore(initialCapacity);
+    }
+
+    ArrayLongAvlTree(LongNodeStore store) {
+        this.store = store;
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    public long getValue(int node) {
+        return store.getKey(node);
+    }
+
+    public int getLeft(int node) {
+        return store.getLeft(node);
+    }
+
+    public int getRight(int node) {
+        return store.getRight(node);
+    }
+
+    public int getParent(int node) {
+        return store.getParent(node);
+    }
+
+    public int getHeight(int node) {
+        return store.getHeight(node);
+    }
+
+    /**
+     * @return the slot of the new node
+     */
+    public int insert(long value) {
+        int node = allocate(value);
+        size++;
+        if (root == NIL) {
+            root = node;
+            return node;
+        }
+        int current = root;
+        while (true) {
+            if (value < store.getKey(current)) {
+                int left = store.getLeft(current);
+                if (left == NIL) {
+                    store.setLeft(current, node);
+                    break;
+                }
+                current = left;
+            } else {
+                int right = store.getRight(current);
+                if (right == NIL) {
+                    store.setRight(current, node);
+                    break;
+                }
+                current = right;
+            }
+        }
+        store.setParent(node, current);
+        retrace(current);
+        return node;
+    }
+
+    public boolean remove(long value) {
+        int node = find(value);
+        if (node == NIL) {
+            return false;
+        }
+        removeNode(node);
+        return true;
+    }
+
+    /**
+     * Same contract as {@link AvlTree#removeNode(Node)}, the slot is released for reuse.
+     */
+    public void removeNode(int node) {
+        if (!isMyNode(node)) {
+            throw new IllegalArgumentException("Can only remove a node of this tree");
+        }
+
+        int left = store.getLeft(node);
+        int right = store.getRight(node);
+        int retraceFrom;
+        if (left != NIL && right != NIL) {
+            int successor = right;
+            while (store.getLeft(successor) != NIL) {
+                successor = store.getLeft(successor);
+            }
+            if (store.getParent(successor) == node) {
+                retraceFrom = successor;
+            } else {
+                retraceFrom = store.getParent(successor);
+                replaceChild(retraceFrom, successor, store.getRight(successor));
+                store.setRight(successor, right);
+                store.setParent(right, successor);
+            }
+            store.setLeft(successor, left);
+            store.setParent(left, successor);
+            replace(node, successor);
+            store.setHeight(successor, store.getHeight(node));
+        } else {
+            retraceFrom = store.getParent(node);
+            replace(node, left != NIL ? left : right);
+        }
+
+        release(node);
+        size--;
+        if (retraceFrom != NIL) {
+            retrace(retraceFrom);
+        }
+    }
+
+    public boolean contains(long value) {
+        return find(value) != NIL;
+    }
+
+    /**
+     * @return the slot of a node holding the value or {@link #NIL}
+     */
+    public int find(long value) {
+        int current = root;
+        while (current != NIL) {
+            long key = store.getKey(current);
+            if (key == value) {
+                return current;
+            }
+            current = value < key ? store.getLeft(current) : store.getRight(current);
+        }
+        return NIL;
+    }
+
+    public int floor(long value) {
+        return below(value, true);
+    }
+
+    public int lower(long value) {
+        return below(value, false);
+    }
+
+    public int ceiling(long value) {
+        return above(value, true);
+    }
+
+    public int higher(long value) {
+        return above(value, false);
+    }
+
+    public int first() {
+        int current = root;
+        while (current != NIL && store.getLeft(current) != NIL) {
+            current = store.getLeft(current);
+        }
+        return current;
+    }
+
+    public int last() {
+        int current = root;
+        while (current != NIL && store.getRight(current) != NIL) {
+            current = store.getRight(current);
+        }
+        return current;
+    }
+
+    /**
+     * Same as {@link AvlTree#rotateRight(Node)}.
+     */
+    public int rotateRight(int nodeC) {
+        int nodeB = store.getLeft(nodeC);
+        int parent = store.getParent(nodeC);
+        if (parent != NIL) {
+            if (store.getLeft(parent) == nodeC) {
+                store.setLeft(parent, nodeB);
+            } else {
+                store.setRight(parent, nodeB);
+            }
+        }
+        int inner = store.getRight(nodeB);
+        store.setParent(nodeB, parent);
+        store.setParent(nodeC, nodeB);
+        store.setLeft(nodeC, inner);
+        if (inner != NIL) {
+            store.setParent(inner, nodeC);
+        }
+        store.setRight(nodeB, nodeC);
+        update(nodeC);
+        update(nodeB);
+        return nodeB;
+    }
+
+    /**
+     * Same as {@link AvlTree#rotateLeft(Node)}.
+     */
+    public int rotateLeft(int nodeA) {
+        int nodeB = store.getRight(nodeA);
+        int parent = store.getParent(nodeA);
+        if (parent != NIL) {
+            if (store.getLeft(parent) == nodeA) {
+                store.setLeft(parent, nodeB);
+            } else {
+                store.setRight(parent, nodeB);
+            }
+        }
+        int inner = store.getLeft(nodeB);
+        store.setParent(nodeB, parent);
+        store.setParent(nodeA, nodeB);
+        store.setRight(nodeA, inner);
+        if (inner != NIL) {
+            store.setParent(inner, nodeA);
+        }
+        store.setLeft(nodeB, nodeA);
+        update(nodeA);
+        update(nodeB);
+        return nodeB;
+    }
+
+    /**
+     * Same as {@link AvlTree#rotateRightLeft(Node)}.
+     */
+    public int rotateRightLeft(int nodeA) {
+        rotateRight(store.getRight(nodeA));
+        return rotateLeft(nodeA);
+    }
+
+    /**
+     * Same as {@link AvlTree#rotateLeftRight(Node)}.
+     */
+    public int rotateLeftRight(int nodeC) {
+        rotateLeft(store.getLeft(nodeC));
+        return rotateRight(nodeC);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (root != NIL) {
+            try {
+                AvlTree.writeSubtree(root, this::leftOrNull, this::rightOrNull, store::getKey, builder,
+                        Integer.MAX_VALUE, Integer.MAX_VALUE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return builder.toString();
+    }
+
+    private Integer leftOrNull(int node) {
+        int left = store.getLeft(node);
+        return left == NIL ? null : left;
+    }
+
+    private Integer rightOrNull(int node) {
+        int right = store.getRight(node);
+        return right == NIL ? null : right;
+    }
+
+    private int allocate(long value) {
+        int node;
+        if (freeHead != NIL) {
+            node = freeHead;
+            freeHead = store.getLeft(node);
+        } else {
+            if (nextUnused == store.capacity()) {
+                if (nextUnused == Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Tree is full");
+                }
+                store.grow((int) Math.min(Integer.MAX_VALUE, 2L * nextUnused));
+            }
+            node = nextUnused++;
+        }
+        store.setKey(node, value);
+        store.setLeft(node, NIL);
+        store.setRight(node, NIL);
+        store.setParent(node, NIL);
+        store.setHeight(node, 0);
+        return node;
+    }
+
+    private void release(int node) {
+        store.setParent(node, NIL);
+        store.setRight(node, NIL);
+        store.setHeight(node, FREE);
+        store.setLeft(node, freeHead);
+        freeHead = node;
+    }
+
+    private boolean isMyNode(int node) {
+        if (node < 0 || node >= nextUnused || store.getHeight(node) == FREE) {
+            return false;
+        }
+        int current = node;
+        while (store.getParent(current) != NIL) {
+            current = store.getParent(current);
+        }
+        return current == root;
+    }
+
+    private void update(int node) {
+        int left = store.getLeft(node);
+        int right = store.getRight(node);
+        int leftHeight = left != NIL ? store.getHeight(left) : -1;
+        int rightHeight = right != NIL ? store.getHeight(right) : -1;
+        store.setHeight(node, Math.max(leftHeight, rightHeight) + 1);
+    }
+
+    private int getBalanceFactor(int node) {
+        int left = store.getLeft(node);
+        int right = store.getRight(node);
+        int leftHeight = left != NIL ? store.getHeight(left) : -1;
+        int rightHeight = right != NIL ? store.getHeight(right) : -1;
+        return leftHeight - rightHeight;
+    }
+
+    private void retrace(int from) {
+        int current = from;
+        while (current != NIL) {
+            int previousHeight = store.getHeight(current);
+            update(current);
+            int balance = getBalanceFactor(current);
+            if (balance > 1 || balance < -1) {
+                boolean wasRoot = current == root;
+                current = rotate(current, balance);
+                if (wasRoot) {
+                    root = current;
+                }
+            }
+            if (store.getHeight(current) == previousHeight) {
+                return;
+            }
+            current = store.getParent(current);
+        }
+    }
+
+    private int rotate(int unbalancedNode, int balance) {
+        if (balance > 0) {
+            return getBalanceFactor(store.getLeft(unbalancedNode)) < 0
+                    ? rotateLeftRight(unbalancedNode) : rotateRight(unbalancedNode);
+        }
+        return getBalanceFactor(store.getRight(unbalancedNode)) > 0
+                ? rotateRightLeft(unbalancedNode) : rotateLeft(unbalancedNode);
+    }
+
+    private int below(long value, boolean inclusive) {
+        int candidate = NIL;
+        int current = root;
+        while (current != NIL) {
+            long key = store.getKey(current);
+            if (value == key && inclusive) {
+                return current;
+            }
+            if (value > key) {
+                candidate = current;
+                current = store.getRight(current);
+            } else {
+                current = store.getLeft(current);
+            }
+        }
+        return candidate;
+    }
+
+    private int above(long value, boolean inclusive) {
+        int candidate = NIL;
+        int current = root;
+        while (current != NIL) {
+            long key = store.getKey(current);
+            if (value == key && inclusive) {
+                return current;
+            }
+            if (value < key) {
+                candidate = current;
+                current = store.getLeft(current);
+            } else {
+                current = store.getRight(current);
+            }
+        }
+        return candidate;
+    }
+
+    private void replace(int node, int replacement) {
+        int parent = store.getParent(node);
+        if (parent != NIL) {
+            replaceChild(parent, node, replacement);
+        } else {
+            root = replacement;
+            if (replacement != NIL) {
+                store.setParent(replacement, NIL);
+            }
+        }
+    }
+
+    private void replaceChild(int parent, int child, int replacement) {
+        if (store.getLeft(parent) == child) {
+            store.setLeft(parent, replacement);
+        } else {
+            store.setRight(parent, replacement);
+        }
+        if (replacement != NIL) {
+            store.setParent(replacement, parent);
+        }
+    }
+}
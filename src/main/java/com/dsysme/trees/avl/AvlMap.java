@@ -0,0 +1,945 @@
+package com.dsysme.trees.avl;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * {@link NavigableMap} kept in an {@link AvlTree} of key/value entries, ordered by the natural ordering of
+ * the keys or by a comparator. A drop in replacement for {@link java.util.TreeMap}: AVL balancing keeps
+ * the tree shallower than a red black tree, which favours lookups.
+ *
+ * All views (sub maps, descending map, key sets) are backed by the map. Sub map sizes are counted in
+ * O(log n) from the cached subtree sizes.
+ */
+public class AvlMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+    /**
+     * Tree value holding a mapping, its natural ordering is the natural ordering of the key.
+     */
+    static final class MapEntry<K, V> implements Map.Entry<K, V>, Comparable<MapEntry<K, V>> {
+        private final K key;
+        private V value;
+
+        MapEntry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V previous = this.value;
+            this.value = value;
+            return previous;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compareTo(MapEntry<K, V> other) {
+            return ((Comparable<? super K>) key).compareTo(other.key);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) other;
+            return equal(key, entry.getKey()) && equal(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private final Comparator<? super K> comparator;
+    private AvlTree<MapEntry<K, V>> tree;
+    private final View all = new View(true, null, false, true, null, false, false);
+
+    public AvlMap() {
+        this(null);
+    }
+
+    /**
+     * @param comparator orders the keys, null for natural ordering
+     */
+    public AvlMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        this.tree = newTree();
+    }
+
+    private AvlTree<MapEntry<K, V>> newTree() {
+        return new AvlTree<>((first, second) -> compare(first.key, second.key));
+    }
+
+    private static boolean equal(Object first, Object second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    @SuppressWarnings("unchecked")
+    final int compare(Object first, Object second) {
+        return comparator == null
+                ? ((Comparable<Object>) first).compareTo(second)
+                : comparator.compare((K) first, (K) second);
+    }
+
+    // ---- tree access by key, in the ascending order of the map
+
+    private Node<MapEntry<K, V>> getNode(Object key) {
+        Node<MapEntry<K, V>> current = tree.getRoot();
+        while (current != null) {
+            int comparison = compare(key, current.getValue().key);
+            if (comparison == 0) {
+                return current;
+            }
+            current = comparison < 0 ? current.getLeft().orElse(null) : current.getRight().orElse(null);
+        }
+        return null;
+    }
+
+    private Node<MapEntry<K, V>> lowestNode() {
+        return AvlTree.leftmost(tree.getRoot());
+    }
+
+    private Node<MapEntry<K, V>> highestNode() {
+        return AvlTree.rightmost(tree.getRoot());
+    }
+
+    private Node<MapEntry<K, V>> below(Object key, boolean inclusive) {
+        Node<MapEntry<K, V>> candidate = null;
+        Node<MapEntry<K, V>> current = tree.getRoot();
+        while (current != null) {
+            int comparison = compare(key, current.getValue().key);
+            if (comparison == 0 && inclusive) {
+                return current;
+            }
+            if (comparison > 0) {
+                candidate = current;
+                current = current.getRight().orElse(null);
+            } else {
+                current = current.getLeft().orElse(null);
+            }
+        }
+        return candidate;
+    }
+
+    private Node<MapEntry<K, V>> above(Object key, boolean inclusive) {
+        Node<MapEntry<K, V>> candidate = null;
+        Node<MapEntry<K, V>> current = tree.getRoot();
+        while (current != null) {
+            int comparison = compare(key, current.getValue().key);
+            if (comparison == 0 && inclusive) {
+                return current;
+            }
+            if (comparison < 0) {
+                candidate = current;
+                current = current.getLeft().orElse(null);
+            } else {
+                current = current.getRight().orElse(null);
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * @return number of keys less than (or equal to, if inclusive) the given one
+     */
+    private int countBelow(Object key, boolean inclusive) {
+        int count = 0;
+        Node<MapEntry<K, V>> current = tree.getRoot();
+        while (current != null) {
+            int comparison = compare(key, current.getValue().key);
+            if (comparison < 0 || comparison == 0 && !inclusive) {
+                current = current.getLeft().orElse(null);
+            } else {
+                count += current.getLeftSize() + 1;
+                current = current.getRight().orElse(null);
+            }
+        }
+        return count;
+    }
+
+    private static <K, V> Map.Entry<K, V> export(Node<MapEntry<K, V>> node) {
+        return node == null ? null : new AbstractMap.SimpleImmutableEntry<>(node.getValue());
+    }
+
+    private static <K> K key(Node<? extends MapEntry<K, ?>> node) {
+        return node == null ? null : node.getValue().getKey();
+    }
+
+    private static <K> K keyOrThrow(Node<? extends MapEntry<K, ?>> node) {
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        return node.getValue().getKey();
+    }
+
+    private Map.Entry<K, V> removeAndExport(Node<MapEntry<K, V>> node) {
+        if (node == null) {
+            return null;
+        }
+        Map.Entry<K, V> exported = export(node);
+        tree.removeNode(node);
+        return exported;
+    }
+
+    // ---- Map
+
+    @Override
+    public int size() {
+        return tree.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getNode(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<MapEntry<K, V>> node = getNode(key);
+        return node == null ? null : node.getValue().value;
+    }
+
+    /**
+     * Finds the insertion point in the same descent that looks for the key.
+     */
+    @Override
+    public V put(K key, V value) {
+        Node<MapEntry<K, V>> current = tree.getRoot();
+        if (current == null) {
+            // fails on a null key or a key of the wrong type like any later comparison would
+            compare(key, key);
+            tree.insertNode(new Node<>(new MapEntry<>(key, value)));
+            return null;
+        }
+        while (true) {
+            int comparison = compare(key, current.getValue().key);
+            if (comparison == 0) {
+                return current.getValue().setValue(value);
+            }
+            Optional<Node<MapEntry<K, V>>> next = comparison < 0 ? current.getLeft() : current.getRight();
+            if (!next.isPresent()) {
+                tree.attach(current, comparison < 0, new Node<>(new MapEntry<>(key, value)));
+                return null;
+            }
+            current = next.get();
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        Node<MapEntry<K, V>> node = getNode(key);
+        if (node == null) {
+            return null;
+        }
+        tree.removeNode(node);
+        return node.getValue().value;
+    }
+
+    @Override
+    public void clear() {
+        tree = newTree();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return all.entrySet();
+    }
+
+    // ---- NavigableMap, through the unbounded view
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return all.lowerEntry(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return all.lowerKey(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+        return all.floorEntry(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return all.floorKey(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return all.ceilingEntry(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return all.ceilingKey(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+        return all.higherEntry(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return all.higherKey(key);
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return all.firstEntry();
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return all.lastEntry();
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        return all.pollFirstEntry();
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        return all.pollLastEntry();
+    }
+
+    @Override
+    public K firstKey() {
+        return all.firstKey();
+    }
+
+    @Override
+    public K lastKey() {
+        return all.lastKey();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return all.descendingMap();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return all.navigableKeySet();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return all.descendingKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return all.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return all.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return all.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    /**
+     * Range of the map between optional low and high bounds (in the ascending order of the map), seen in
+     * ascending or descending order. The "absolute" helpers work in ascending order, the NavigableMap
+     * methods map onto them according to the direction.
+     */
+    private final class View extends AbstractMap<K, V> implements NavigableMap<K, V> {
+        private final boolean fromStart;
+        private final K low;
+        private final boolean lowInclusive;
+        private final boolean toEnd;
+        private final K high;
+        private final boolean highInclusive;
+        private final boolean descending;
+
+        View(boolean fromStart, K low, boolean lowInclusive, boolean toEnd, K high, boolean highInclusive,
+             boolean descending) {
+            if (!fromStart && !toEnd && compare(low, high) > 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            this.fromStart = fromStart;
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.toEnd = toEnd;
+            this.high = high;
+            this.highInclusive = highInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(Object key) {
+            if (fromStart) {
+                return false;
+            }
+            int comparison = compare(key, low);
+            return comparison < 0 || comparison == 0 && !lowInclusive;
+        }
+
+        private boolean tooHigh(Object key) {
+            if (toEnd) {
+                return false;
+            }
+            int comparison = compare(key, high);
+            return comparison > 0 || comparison == 0 && !highInclusive;
+        }
+
+        private boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        private boolean inClosedRange(Object key) {
+            return (fromStart || compare(key, low) >= 0) && (toEnd || compare(high, key) >= 0);
+        }
+
+        private boolean inRange(Object key, boolean inclusive) {
+            return inclusive ? inRange(key) : inClosedRange(key);
+        }
+
+        private Node<MapEntry<K, V>> absLowest() {
+            Node<MapEntry<K, V>> node = fromStart ? lowestNode() : above(low, lowInclusive);
+            return node == null || tooHigh(node.getValue().key) ? null : node;
+        }
+
+        private Node<MapEntry<K, V>> absHighest() {
+            Node<MapEntry<K, V>> node = toEnd ? highestNode() : below(high, highInclusive);
+            return node == null || tooLow(node.getValue().key) ? null : node;
+        }
+
+        private Node<MapEntry<K, V>> absAbove(Object key, boolean inclusive) {
+            if (tooLow(key)) {
+                return absLowest();
+            }
+            Node<MapEntry<K, V>> node = above(key, inclusive);
+            return node == null || tooHigh(node.getValue().key) ? null : node;
+        }
+
+        private Node<MapEntry<K, V>> absBelow(Object key, boolean inclusive) {
+            if (tooHigh(key)) {
+                return absHighest();
+            }
+            Node<MapEntry<K, V>> node = below(key, inclusive);
+            return node == null || tooLow(node.getValue().key) ? null : node;
+        }
+
+        private Node<MapEntry<K, V>> lowerNode(K key) {
+            return descending ? absAbove(key, false) : absBelow(key, false);
+        }
+
+        private Node<MapEntry<K, V>> floorNode(K key) {
+            return descending ? absAbove(key, true) : absBelow(key, true);
+        }
+
+        private Node<MapEntry<K, V>> ceilingNode(K key) {
+            return descending ? absBelow(key, true) : absAbove(key, true);
+        }
+
+        private Node<MapEntry<K, V>> higherNode(K key) {
+            return descending ? absBelow(key, false) : absAbove(key, false);
+        }
+
+        private Node<MapEntry<K, V>> firstNode() {
+            return descending ? absHighest() : absLowest();
+        }
+
+        private Node<MapEntry<K, V>> lastNode() {
+            return descending ? absLowest() : absHighest();
+        }
+
+        @Override
+        public int size() {
+            if (fromStart && toEnd) {
+                return tree.size();
+            }
+            int upTo = toEnd ? tree.size() : countBelow(high, highInclusive);
+            int before = fromStart ? 0 : countBelow(low, !lowInclusive);
+            return Math.max(0, upTo - before);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return absLowest() == null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && AvlMap.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRange(key) ? AvlMap.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (!inRange(key)) {
+                throw new IllegalArgumentException("Key out of range: " + key);
+            }
+            return AvlMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRange(key) ? AvlMap.this.remove(key) : null;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    Node<MapEntry<K, V>> first = firstNode();
+                    Node<MapEntry<K, V>> last = lastNode();
+                    return new EntryIterator(first, last, !descending);
+                }
+
+                @Override
+                public int size() {
+                    return View.this.size();
+                }
+
+                @Override
+                public boolean isEmpty() {
+                    return View.this.isEmpty();
+                }
+
+                @Override
+                public boolean contains(Object object) {
+                    if (!(object instanceof Map.Entry)) {
+                        return false;
+                    }
+                    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) object;
+                    if (!inRange(entry.getKey())) {
+                        return false;
+                    }
+                    Node<MapEntry<K, V>> node = getNode(entry.getKey());
+                    return node != null && equal(node.getValue().value, entry.getValue());
+                }
+
+                @Override
+                public boolean remove(Object object) {
+                    if (!contains(object)) {
+                        return false;
+                    }
+                    tree.removeNode(getNode(((Map.Entry<?, ?>) object).getKey()));
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            if (!descending) {
+                return comparator;
+            }
+            return comparator == null ? Collections.reverseOrder() : Collections.reverseOrder(comparator);
+        }
+
+        @Override
+        public Map.Entry<K, V> lowerEntry(K key) {
+            return export(lowerNode(key));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return key(lowerNode(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> floorEntry(K key) {
+            return export(floorNode(key));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return key(floorNode(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> ceilingEntry(K key) {
+            return export(ceilingNode(key));
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return key(ceilingNode(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> higherEntry(K key) {
+            return export(higherNode(key));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return key(higherNode(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> firstEntry() {
+            return export(firstNode());
+        }
+
+        @Override
+        public Map.Entry<K, V> lastEntry() {
+            return export(lastNode());
+        }
+
+        @Override
+        public Map.Entry<K, V> pollFirstEntry() {
+            return removeAndExport(firstNode());
+        }
+
+        @Override
+        public Map.Entry<K, V> pollLastEntry() {
+            return removeAndExport(lastNode());
+        }
+
+        @Override
+        public K firstKey() {
+            return keyOrThrow(firstNode());
+        }
+
+        @Override
+        public K lastKey() {
+            return keyOrThrow(lastNode());
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new View(fromStart, low, lowInclusive, toEnd, high, highInclusive, !descending);
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new KeySet<>(this);
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            if (!inRange(fromKey, fromInclusive) || !inRange(toKey, toInclusive)) {
+                throw new IllegalArgumentException("Key out of range");
+            }
+            if (descending) {
+                return new View(false, toKey, toInclusive, false, fromKey, fromInclusive, true);
+            }
+            return new View(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (!inRange(toKey, inclusive)) {
+                throw new IllegalArgumentException("Key out of range");
+            }
+            if (descending) {
+                return new View(false, toKey, inclusive, toEnd, high, highInclusive, true);
+            }
+            return new View(fromStart, low, lowInclusive, false, toKey, inclusive, false);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (!inRange(fromKey, inclusive)) {
+                throw new IllegalArgumentException("Key out of range");
+            }
+            if (descending) {
+                return new View(fromStart, low, lowInclusive, false, fromKey, inclusive, true);
+            }
+            return new View(false, fromKey, inclusive, toEnd, high, highInclusive, false);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+    }
+
+    /**
+     * Walks from first to last (both included) along successor or predecessor links.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Node<MapEntry<K, V>> last;
+        private final boolean ascending;
+        private Node<MapEntry<K, V>> next;
+        private Node<MapEntry<K, V>> lastReturned;
+        private int expectedModCount = tree.getModCount();
+
+        EntryIterator(Node<MapEntry<K, V>> first, Node<MapEntry<K, V>> last, boolean ascending) {
+            this.next = first;
+            this.last = last;
+            this.ascending = ascending;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            if (tree.getModCount() != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            lastReturned = next;
+            if (next == last) {
+                next = null;
+            } else {
+                next = ascending ? AvlTree.successor(next) : AvlTree.predecessor(next);
+            }
+            return lastReturned.getValue();
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (tree.getModCount() != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            // nodes keep their identity on removal, next and last stay valid
+            tree.removeNode(lastReturned);
+            lastReturned = null;
+            expectedModCount = tree.getModCount();
+        }
+    }
+
+    /**
+     * Key view of any navigable map, every operation is delegated to the map.
+     */
+    static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+        private final NavigableMap<E, ?> map;
+
+        KeySet(NavigableMap<E, ?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            Iterator<? extends Map.Entry<E, ?>> entries = map.entrySet().iterator();
+            return new Iterator<E>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public E next() {
+                    return entries.next().getKey();
+                }
+
+                @Override
+                public void remove() {
+                    entries.remove();
+                }
+            };
+        }
+
+        @Override
+        public Iterator<E> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object object) {
+            return map.containsKey(object);
+        }
+
+        @Override
+        public boolean remove(Object object) {
+            if (!map.containsKey(object)) {
+                return false;
+            }
+            map.remove(object);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public E lower(E element) {
+            return map.lowerKey(element);
+        }
+
+        @Override
+        public E floor(E element) {
+            return map.floorKey(element);
+        }
+
+        @Override
+        public E ceiling(E element) {
+            return map.ceilingKey(element);
+        }
+
+        @Override
+        public E higher(E element) {
+            return map.higherKey(element);
+        }
+
+        @Override
+        public E pollFirst() {
+            Map.Entry<E, ?> entry = map.pollFirstEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public E pollLast() {
+            Map.Entry<E, ?> entry = map.pollLastEntry();
+            return entry == null ? null : entry.getKey();
+        }
+
+        @Override
+        public Comparator<? super E> comparator() {
+            return map.comparator();
+        }
+
+        @Override
+        public E first() {
+            return map.firstKey();
+        }
+
+        @Override
+        public E last() {
+            return map.lastKey();
+        }
+
+        @Override
+        public NavigableSet<E> descendingSet() {
+            return new KeySet<>(map.descendingMap());
+        }
+
+        @Override
+        public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+            return new KeySet<>(map.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            return new KeySet<>(map.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            return new KeySet<>(map.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<E> subSet(E fromElement, E toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<E> headSet(E toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<E> tailSet(E fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
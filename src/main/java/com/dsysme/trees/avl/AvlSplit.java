@@ -0,0 +1,34 @@
+package com.dsysme.trees.avl;
+
+import java.util.Optional;
+
+/**
+ * Result of {@link AvlTree#split(Comparable)}: the values below the key, a node equal to it if there was one
+ * and the values above it.
+ */
+public class AvlSplit<T extends Comparable> {
+    private final AvlTree<T> left;
+    private final Optional<Node<T>> pivot;
+    private final AvlTree<T> right;
+
+    AvlSplit(AvlTree<T> left, Optional<Node<T>> pivot, AvlTree<T> right) {
+        this.left = left;
+        this.pivot = pivot;
+        this.right = right;
+    }
+
+    public AvlTree<T> getLeft() {
+        return left;
+    }
+
+    /**
+     * @return a detached node equal to the key, empty if the tree held none
+     */
+    public Optional<Node<T>> getPivot() {
+        return pivot;
+    }
+
+    public AvlTree<T> getRight() {
+        return right;
+    }
+}
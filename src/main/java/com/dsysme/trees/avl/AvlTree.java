@@ -1,43 +1,754 @@
 package com.dsysme.trees.avl;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * TODO make sure you cannot create cycles
- * Thoughts:
- *  I think it is best to save balance and re calculate by adding one on insert path and rechecking balance.
- *  The insert should return the lowest unbalanced node in the path
+ * Every node caches its height and subtree size, an insert or remove only retraces the path from the
+ * changed node up to the root (at most one rotation per insert).
  * https://www.tutorialspoint.com/data_structures_algorithms/avl_tree_algorithm.htm
  */
-public class AvlTree<T extends Comparable> {
+public class AvlTree<T extends Comparable> implements Iterable<T> {
 
+    // a batch is merged by rebuilding the tree once finger inserts are estimated to cost more than relinking every node
+    private static final double REBUILD_COST_FACTOR = 2.0;
+
+    private final Comparator<? super T> comparator;
+    private final boolean multiset;
     private Node<T> root;
+    private int size;
+    private int modCount;
+    private AvlTreeListener listener;
+    private boolean appendMode;
+    // in append mode the node with the greatest value, null when it has to be looked up again
+    private Node<T> maxNode;
+    private long appendHits;
+
+    public AvlTree() {
+        this((Comparator<? super T>) null);
+    }
+
+    /**
+     * @param comparator orders the values instead of their natural ordering, null for natural ordering
+     */
+    public AvlTree(Comparator<? super T> comparator) {
+        this(comparator, false);
+    }
+
+    private AvlTree(Comparator<? super T> comparator, boolean multiset) {
+        this.comparator = comparator;
+        this.multiset = multiset;
+        this.root = null;
+    }
 
     public AvlTree(Node<T> root) {
+        this.comparator = null;
+        this.multiset = false;
         this.root = root;
+        for (Node<T> node = leftmost(root); node != null; node = successor(node)) {
+            size += node.getCount();
+        }
     }
 
+    /**
+     * Wraps an already linked and balanced subtree with up to date caches.
+     */
+    AvlTree(Comparator<? super T> comparator, boolean multiset, Node<T> root) {
+        this.comparator = comparator;
+        this.multiset = multiset;
+        this.root = root;
+        this.size = root == null ? 0 : root.getSize();
+    }
+
+    /**
+     * A tree keeping one node per distinct value: inserting an equal value increments the count of its node,
+     * removing a value decrements it. Sizes, ranks, quantiles and iteration still count every occurrence.
+     */
+    public static <T extends Comparable> AvlTree<T> multiset() {
+        return new AvlTree<>(null, true);
+    }
+
+    /**
+     * @see #multiset()
+     */
+    public static <T extends Comparable> AvlTree<T> multiset(Comparator<? super T> comparator) {
+        return new AvlTree<>(comparator, true);
+    }
+
+    public boolean isMultiset() {
+        return multiset;
+    }
+
+    /**
+     * Builds a perfectly balanced tree in linear time, without comparing or rotating.
+     * @param values in ascending order, equal values allowed
+     * @throws IllegalArgumentException if the values are not sorted
+     */
+    public static <T extends Comparable> AvlTree<T> fromSorted(T[] values) {
+        return fromSorted(Arrays.asList(values));
+    }
+
+    /**
+     * @see #fromSorted(Comparable[])
+     */
+    public static <T extends Comparable> AvlTree<T> fromSorted(List<T> values) {
+        return fromSorted(values.iterator());
+    }
+
+    /**
+     * @see #fromSorted(Comparable[])
+     */
+    public static <T extends Comparable> AvlTree<T> fromSorted(Iterator<T> values) {
+        List<Node<T>> nodes = new ArrayList<>();
+        T previous = null;
+        while (values.hasNext()) {
+            T value = values.next();
+            if (previous != null && value.compareTo(previous) < 0) {
+                throw new IllegalArgumentException("Values are not sorted: " + value + " comes after " + previous);
+            }
+            nodes.add(new Node<>(value));
+            previous = value;
+        }
+        AvlTree<T> tree = new AvlTree<>();
+        tree.root = linkBalanced(nodes, 0, nodes.size());
+        tree.size = nodes.size();
+        return tree;
+    }
+
+    /**
+     * Sorts a copy of the values and builds the tree with {@link #fromSorted(Comparable[])}.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Comparable> AvlTree<T> fromUnsorted(Collection<T> values) {
+        T[] sorted = (T[]) values.toArray(new Comparable[0]);
+        Arrays.sort(sorted);
+        return fromSorted(sorted);
+    }
+
+    /**
+     * Links nodes[from, to) into a perfectly balanced subtree, children get their parent set and
+     * heights are computed bottom up.
+     * @return the detached root of the subtree, null for an empty range
+     */
+    static <T extends Comparable> Node<T> linkBalanced(List<Node<T>> nodes, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        Node<T> node = nodes.get(middle);
+        Optional<Node<T>> left = Optional.ofNullable(linkBalanced(nodes, from, middle));
+        Optional<Node<T>> right = Optional.ofNullable(linkBalanced(nodes, middle + 1, to));
+        node.setParent(Optional.empty());
+        node.setLeft(left);
+        node.setRight(right);
+        left.ifPresent(child -> child.setParent(node.asOptional()));
+        right.ifPresent(child -> child.setParent(node.asOptional()));
+        node.update();
+        return node;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Links the node and rebalances. In a multiset an equal value only adds the count of the node to the
+     * existing node and the given node stays detached.
+     */
     public void insertNode(Node<T> node) {
         if (!node.isLeaf() || !node.isRoot() || node == root) {
             throw new IllegalArgumentException("Can only add detached leaf that is not this.root");
         }
 
-        insertNode(root, node);
-        restoreBalance();
+        node.update();
+        modCount++;
+        if (root == null) {
+            this.root = node;
+            size += node.getCount();
+            maxNode = appendMode ? node : null;
+        } else if (appendMode && append(node)) {
+            appendHits++;
+        } else {
+            Node<T> equal = insertNode(root, node);
+            if (equal != null) {
+                addOccurrences(equal, node.getCount());
+            } else {
+                size += node.getCount();
+                retrace(node.getParent().get());
+            }
+        }
+        notifyModification();
+    }
+
+    /**
+     * Attaches the node below the greatest node if it is not ordered before it. The ancestors of the greatest
+     * node are the right spine, so that is all the retrace walks.
+     * @return false if the node belongs elsewhere and was not inserted
+     */
+    private boolean append(Node<T> node) {
+        if (maxNode == null) {
+            maxNode = rightmost(root);
+        }
+        int comparison = compare(node.getValue(), maxNode.getValue());
+        if (comparison < 0) {
+            return false;
+        }
+        if (listener != null) {
+            listener.onDescent(AvlTreeListener.Operation.INSERT, 1);
+        }
+        if (comparison == 0 && multiset) {
+            addOccurrences(maxNode, node.getCount());
+            return true;
+        }
+        maxNode.setRight(node.asOptional());
+        node.setParent(maxNode.asOptional());
+        size += node.getCount();
+        retrace(maxNode);
+        maxNode = node;
+        return true;
+    }
+
+    /**
+     * In append mode {@link #insertNode(Node)} first compares the value with the greatest one and, when it is
+     * not less, links the node right there without descending. Values that are not in order fall back to the
+     * normal insert. Meant for mostly increasing values such as timestamps.
+     */
+    public void setAppendMode(boolean appendMode) {
+        this.appendMode = appendMode;
+        this.maxNode = null;
+    }
+
+    public boolean isAppendMode() {
+        return appendMode;
+    }
+
+    /**
+     * @return inserts that took the append fast path
+     */
+    public long getAppendHits() {
+        return appendHits;
+    }
+
+    /**
+     * Changes the count of a node of this tree and the cached sizes above it, no relinking needed.
+     */
+    private void addOccurrences(Node<T> node, int occurrences) {
+        node.setCount(node.getCount() + occurrences);
+        for (Node<T> current = node; current != null; current = current.getParent().orElse(null)) {
+            current.update();
+        }
+        size += occurrences;
     }
 
-    private void restoreBalance() {
-        Optional<AvlBalanceDetails<T>> unbalanced = findLowestLeftmostUnbalancedNode(root);
-        if (!unbalanced.isPresent()) {
+    /**
+     * Inserts a batch of values. The batch is sorted first, then either merged with the existing nodes into a
+     * rebuilt balanced tree when it is large relative to the tree, or inserted in order with each descent
+     * starting from the previous insertion point instead of the root.
+     */
+    @SuppressWarnings("unchecked")
+    public void insertAll(Collection<? extends T> values) {
+        if (values.isEmpty()) {
             return;
         }
-        Node<T> unbalancedNode = unbalanced.get().getNode();
-        RebalanceType rebalanceType = getRebalanceType(unbalanced.get().getNode());
-        Node<T> newRoot = rotate(rebalanceType, unbalancedNode);
-        if (unbalancedNode == root) {
-            this.root = newRoot;
+        T[] batch = (T[]) values.toArray(new Comparable[0]);
+        Arrays.sort(batch, comparator);
+        int batchSize = batch.length;
+        double fingerCost = REBUILD_COST_FACTOR * batchSize * (log2((double) size / batchSize + 1) + 1);
+        if (fingerCost >= size + batchSize) {
+            rebuildWith(batch);
+        } else {
+            fingerInsert(batch);
+        }
+    }
+
+    /**
+     * Splits this tree in time O(log n) into the values ordered before the key and those ordered after it, with
+     * a node equal to the key taken out as the pivot. With duplicates further equal values may be on either side.
+     * This tree is left empty, its nodes move to the two halves.
+     */
+    public AvlSplit<T> split(T key) {
+        Node<T>[] parts = new AvlTreeJoin<T>(comparator).split(takeRoot(), key);
+        return new AvlSplit<>(withRoot(parts[0]), Optional.ofNullable(parts[1]), withRoot(parts[2]));
+    }
+
+    /**
+     * Links two trees and a pivot value between them in time proportional to their height difference.
+     * Both trees are left empty.
+     * @throws IllegalArgumentException if a value of left is ordered after the pivot or one of right before it,
+     * in a multiset also if one is equal to it, or the trees are ordered by different comparators or only one
+     * of them is a multiset
+     */
+    public static <T extends Comparable> AvlTree<T> join(AvlTree<T> left, T pivot, AvlTree<T> right) {
+        checkSameOrdering(left, right);
+        // a multiset keeps equal values in one node, so the pivot cannot become a node of its own
+        int limit = left.multiset ? 0 : 1;
+        if (!left.isEmpty() && left.compare(left.last().get().getValue(), pivot) >= limit
+                || !right.isEmpty() && right.compare(pivot, right.first().get().getValue()) >= limit) {
+            throw new IllegalArgumentException("Pivot " + pivot + " is not between the two trees");
+        }
+        return left.withRoot(AvlTreeJoin.join(left.takeRoot(), new Node<>(pivot), right.takeRoot()));
+    }
+
+    /**
+     * Values of both trees, a value of second equal to one of first is dropped. Takes O(m log(n/m + 1)) work
+     * for sizes m <= n, large operands are processed in parallel on the common fork join pool.
+     * In multisets a value occurs as often as in the operand where it occurs most.
+     * Both trees are left empty, their nodes are reused.
+     * @throws IllegalArgumentException if the trees are ordered by different comparators or only one of them
+     * is a multiset
+     */
+    public static <T extends Comparable> AvlTree<T> union(AvlTree<T> first, AvlTree<T> second) {
+        return apply(AvlTreeJoin.Operation.UNION, first, second);
+    }
+
+    /**
+     * Values of first that have an equal value in second, see {@link #union(AvlTree, AvlTree)}.
+     * In multisets a value occurs as often as in the operand where it occurs least.
+     */
+    public static <T extends Comparable> AvlTree<T> intersection(AvlTree<T> first, AvlTree<T> second) {
+        return apply(AvlTreeJoin.Operation.INTERSECTION, first, second);
+    }
+
+    /**
+     * Values of first that have no equal value in second, see {@link #union(AvlTree, AvlTree)}.
+     * In multisets each occurrence in second takes away one in first.
+     */
+    public static <T extends Comparable> AvlTree<T> difference(AvlTree<T> first, AvlTree<T> second) {
+        return apply(AvlTreeJoin.Operation.DIFFERENCE, first, second);
+    }
+
+    private static <T extends Comparable> AvlTree<T> apply(AvlTreeJoin.Operation operation, AvlTree<T> first,
+                                                           AvlTree<T> second) {
+        checkSameOrdering(first, second);
+        Node<T> firstRoot = first.takeRoot();
+        Node<T> secondRoot = second.takeRoot();
+        return first.withRoot(new AvlTreeJoin<T>(first.comparator).apply(operation, firstRoot, secondRoot));
+    }
+
+    private static void checkSameOrdering(AvlTree<?> first, AvlTree<?> second) {
+        if (first == second) {
+            throw new IllegalArgumentException("Cannot combine a tree with itself");
+        }
+        if (first.comparator != second.comparator) {
+            throw new IllegalArgumentException("Trees are ordered by different comparators");
+        }
+        if (first.multiset != second.multiset) {
+            throw new IllegalArgumentException("Cannot combine a multiset with a tree that is not one");
+        }
+    }
+
+    /**
+     * Empties this tree handing out its nodes.
+     */
+    private Node<T> takeRoot() {
+        Node<T> taken = root;
+        root = null;
+        maxNode = null;
+        size = 0;
+        modCount++;
+        notifyModification();
+        return taken;
+    }
+
+    private AvlTree<T> withRoot(Node<T> root) {
+        return new AvlTree<>(comparator, multiset, root);
+    }
+
+    private static double log2(double value) {
+        return Math.log(value) / Math.log(2);
+    }
+
+    private void rebuildWith(T[] batch) {
+        List<Node<T>> nodes = new ArrayList<>(size + batch.length);
+        Node<T> existing = leftmost(root);
+        for (T value : batch) {
+            // equal values go after the existing ones, as insertNode would put them
+            while (existing != null && compare(existing.getValue(), value) <= 0) {
+                nodes.add(existing);
+                existing = successor(existing);
+            }
+            Node<T> last = nodes.isEmpty() ? null : nodes.get(nodes.size() - 1);
+            if (multiset && last != null && compare(last.getValue(), value) == 0) {
+                // linkBalanced refreshes the sizes afterwards
+                last.setCount(last.getCount() + 1);
+            } else {
+                nodes.add(new Node<>(value));
+            }
+        }
+        for (; existing != null; existing = successor(existing)) {
+            nodes.add(existing);
+        }
+        this.root = linkBalanced(nodes, 0, nodes.size());
+        this.size = root == null ? 0 : root.getSize();
+        this.maxNode = null;
+        modCount++;
+        notifyModification();
+    }
+
+    private void fingerInsert(T[] batch) {
+        Node<T> finger = null;
+        for (T value : batch) {
+            Node<T> node = new Node<>(value);
+            modCount++;
+            Node<T> start = finger != null ? finger : root;
+            if (start == null) {
+                this.root = node;
+                size++;
+                finger = node;
+                continue;
+            }
+            // climb until the subtree is bounded above by a greater ancestor, the lower bound holds since
+            // the batch is sorted
+            while (finger != null && start.getParent().isPresent()) {
+                Node<T> parent = start.getParent().get();
+                if (parent.isMyLeftChild(start) && compare(value, parent.getValue()) < 0) {
+                    break;
+                }
+                start = parent;
+            }
+            Node<T> equal = insertNode(start, node);
+            if (equal != null) {
+                addOccurrences(equal, 1);
+                finger = equal;
+            } else {
+                size++;
+                retrace(node.getParent().get());
+                finger = node;
+            }
+        }
+        maxNode = null;
+        notifyModification();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the comparator ordering the values, null for natural ordering
+     */
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+
+    int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * @param listener receives rotation, descent and modification events, null to detach
+     */
+    public void setListener(AvlTreeListener listener) {
+        this.listener = listener;
+    }
+
+    public AvlTreeListener getListener() {
+        return listener;
+    }
+
+    private void notifyModification() {
+        if (listener != null) {
+            listener.onModification(size, root == null ? -1 : root.getHeight());
+        }
+    }
+
+    /**
+     * Links a detached leaf as a missing child of a node of this tree, for callers that already found
+     * the insertion point, and rebalances.
+     */
+    void attach(Node<T> parent, boolean asLeft, Node<T> node) {
+        node.update();
+        if (asLeft) {
+            parent.setLeft(node.asOptional());
+        } else {
+            parent.setRight(node.asOptional());
+        }
+        node.setParent(parent.asOptional());
+        size++;
+        modCount++;
+        maxNode = null;
+        retrace(parent);
+        notifyModification();
+    }
+
+    /**
+     * @return number of values strictly less than the given one
+     */
+    public int rank(T value) {
+        return countBelow(value, false);
+    }
+
+    /**
+     * @return occurrences of values equal to the given one
+     */
+    public int count(T value) {
+        return countRange(value, value);
+    }
+
+    /**
+     * @param index zero based position in order, a node with a count greater than one covers that many positions
+     * @return the node at that position
+     * @throws IndexOutOfBoundsException unless 0 <= index < size
+     */
+    public Node<T> select(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of tree of size " + size);
+        }
+        Node<T> current = root;
+        int remaining = index;
+        while (true) {
+            int leftSize = current.getLeftSize();
+            if (remaining < leftSize) {
+                current = current.getLeft().get();
+            } else if (remaining < leftSize + current.getCount()) {
+                return current;
+            } else {
+                remaining -= leftSize + current.getCount();
+                current = current.getRight().get();
+            }
+        }
+    }
+
+    /**
+     * @return number of values v with low <= v <= high
+     */
+    public int countRange(T low, T high) {
+        if (compare(low, high) > 0) {
+            return 0;
+        }
+        return countBelow(high, true) - countBelow(low, false);
+    }
+
+    /**
+     * Nearest rank quantile: the smallest value such that at least the given fraction of the values
+     * are less than or equal to it.
+     * @param fraction between 0 and 1, 0.5 is the median
+     * @throws NoSuchElementException if the tree is empty
+     */
+    public T quantile(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("Fraction must be between 0 and 1: " + fraction);
+        }
+        if (size == 0) {
+            throw new NoSuchElementException("Empty tree has no quantiles");
+        }
+        int index = (int) Math.ceil(fraction * size) - 1;
+        return select(Math.max(0, index)).getValue();
+    }
+
+    /**
+     * @param percent between 0 and 100, 99 is the p99
+     * @see #quantile(double)
+     */
+    public T percentile(double percent) {
+        return quantile(percent / 100);
+    }
+
+    private int countBelow(T value, boolean inclusive) {
+        int count = 0;
+        int comparisons = 0;
+        Node<T> current = root;
+        while (current != null) {
+            int comparison = compare(value, current.getValue());
+            comparisons++;
+            if (comparison < 0 || comparison == 0 && !inclusive) {
+                current = current.getLeft().orElse(null);
+            } else {
+                count += current.getLeftSize() + current.getCount();
+                current = current.getRight().orElse(null);
+            }
+        }
+        if (listener != null) {
+            listener.onDescent(AvlTreeListener.Operation.SEARCH, comparisons);
+        }
+        return count;
+    }
+
+    /**
+     * Removes one occurrence of a value equal to the given one, in a multiset by decrementing the count of its node.
+     * @return true if such a value was found
+     */
+    public boolean remove(T value) {
+        Node<T> node = search(value, AvlTreeListener.Operation.REMOVE);
+        if (node == null) {
+            return false;
+        }
+        removeOccurrence(node);
+        return true;
+    }
+
+    private void removeOccurrence(Node<T> node) {
+        if (node.getCount() > 1) {
+            modCount++;
+            addOccurrences(node, -1);
+            notifyModification();
+        } else {
+            removeNode(node);
+        }
+    }
+
+    /**
+     * Unlinks the node from this tree, with all the occurrences it counts, and rebalances on the way up to the root.
+     * Other nodes keep their identity, a node with two children is replaced by its in-order successor.
+     * The removed node is left detached so it can be inserted again.
+     */
+    public void removeNode(Node<T> node) {
+        if (!isMyNode(node)) {
+            throw new IllegalArgumentException("Can only remove a node of this tree");
+        }
+
+        Node<T> retraceFrom;
+        if (node.getLeft().isPresent() && node.getRight().isPresent()) {
+            Node<T> successor = node.getRight().get();
+            while (successor.getLeft().isPresent()) {
+                successor = successor.getLeft().get();
+            }
+            if (successor.getParent().get() == node) {
+                retraceFrom = successor;
+            } else {
+                retraceFrom = successor.getParent().get();
+                replaceChild(retraceFrom, successor, successor.getRight());
+                successor.setRight(node.getRight());
+                node.getRight().get().setParent(successor.asOptional());
+            }
+            successor.setLeft(node.getLeft());
+            node.getLeft().get().setParent(successor.asOptional());
+            replace(node, successor.asOptional());
+        } else {
+            retraceFrom = node.getParent().orElse(null);
+            replace(node, node.getLeft().isPresent() ? node.getLeft() : node.getRight());
+        }
+
+        node.setParent(Optional.empty());
+        node.setLeft(Optional.empty());
+        node.setRight(Optional.empty());
+        node.update();
+        size -= node.getCount();
+        modCount++;
+        if (node == maxNode) {
+            maxNode = null;
+        }
+        if (retraceFrom != null) {
+            retrace(retraceFrom);
+        }
+        notifyModification();
+    }
+
+    static <T extends Comparable> Node<T> rightmost(Node<T> node) {
+        Node<T> current = node;
+        while (current != null && current.getRight().isPresent()) {
+            current = current.getRight().get();
+        }
+        return current;
+    }
+
+    static <T extends Comparable> Node<T> leftmost(Node<T> node) {
+        Node<T> current = node;
+        while (current != null && current.getLeft().isPresent()) {
+            current = current.getLeft().get();
+        }
+        return current;
+    }
+
+    /**
+     * @return the next node in order, or null after the last one
+     */
+    static <T extends Comparable> Node<T> successor(Node<T> node) {
+        if (node.getRight().isPresent()) {
+            return leftmost(node.getRight().get());
+        }
+        Node<T> current = node;
+        while (current.getParent().isPresent() && current.getParent().get().isMyRightChild(current)) {
+            current = current.getParent().get();
+        }
+        return current.getParent().orElse(null);
+    }
+
+    /**
+     * @return the previous node in order, or null before the first one
+     */
+    static <T extends Comparable> Node<T> predecessor(Node<T> node) {
+        if (node.getLeft().isPresent()) {
+            return rightmost(node.getLeft().get());
+        }
+        Node<T> current = node;
+        while (current.getParent().isPresent() && current.getParent().get().isMyLeftChild(current)) {
+            current = current.getParent().get();
+        }
+        return current.getParent().orElse(null);
+    }
+
+    private boolean isMyNode(Node<T> node) {
+        Node<T> current = node;
+        while (current.getParent().isPresent()) {
+            current = current.getParent().get();
+        }
+        return current == root;
+    }
+
+    /**
+     * Puts the replacement where the node hangs, at its parent or at the root.
+     */
+    private void replace(Node<T> node, Optional<Node<T>> replacement) {
+        if (node.getParent().isPresent()) {
+            replaceChild(node.getParent().get(), node, replacement);
+        } else {
+            this.root = replacement.orElse(null);
+            replacement.ifPresent(newRoot -> newRoot.setParent(Optional.empty()));
+        }
+    }
+
+    private void replaceChild(Node<T> parent, Node<T> child, Optional<Node<T>> replacement) {
+        if (parent.isMyLeftChild(child)) {
+            parent.setLeft(replacement);
+        } else {
+            parent.setRight(replacement);
+        }
+        if (replacement.isPresent()) {
+            replacement.get().setParent(parent.asOptional());
+        }
+    }
+
+    /**
+     * Walks up from the given node to the root refreshing cached heights and sizes and rotating unbalanced nodes.
+     */
+    private void retrace(Node<T> from) {
+        Node<T> current = from;
+        while (current != null) {
+            current.update();
+            if (Math.abs(current.getBalanceFactor()) > 1) {
+                boolean wasRoot = current == root;
+                RebalanceType rebalanceType = getRebalanceType(current);
+                if (listener != null) {
+                    listener.onRotation(rebalanceType);
+                }
+                current = rotate(rebalanceType, current);
+                if (wasRoot) {
+                    this.root = current;
+                }
+            }
+            current = current.getParent().orElse(null);
         }
     }
 
@@ -62,6 +773,7 @@ public class AvlTree<T extends Comparable> {
      *  /                 / \
      * A                 A  C
      *
+     * Cached heights of the rotated nodes are refreshed, those of their ancestors are left to the caller.
      */
     public Node<T> rotateRight(Node<T> nodeC) {
 
@@ -69,15 +781,20 @@ public class AvlTree<T extends Comparable> {
         if (nodeC.getParent().isPresent()) {
            Node<T> nodeCParent = nodeC.getParent().get();
            if (nodeCParent.isMyLeftChild(nodeC)) {
-               nodeCParent.setLeft(Optional.of(nodeB));
+               nodeCParent.setLeft(nodeB.asOptional());
            } else {
-               nodeCParent.setRight(Optional.of(nodeB));
+               nodeCParent.setRight(nodeB.asOptional());
            }
         }
         nodeB.setParent(nodeC.getParent());
-        nodeC.setParent(Optional.of(nodeB));
+        nodeC.setParent(nodeB.asOptional());
         nodeC.setLeft(nodeB.getRight());
-        nodeB.setRight(Optional.of(nodeC));
+        if (nodeB.getRight().isPresent()) {
+            nodeB.getRight().get().setParent(nodeC.asOptional());
+        }
+        nodeB.setRight(nodeC.asOptional());
+        nodeC.update();
+        nodeB.update();
         return nodeB;
     }
 
@@ -96,15 +813,20 @@ public class AvlTree<T extends Comparable> {
         if (nodeA.getParent().isPresent()) {
             Node<T> nodeAParent = nodeA.getParent().get();
             if (nodeAParent.isMyLeftChild(nodeA)) {
-                nodeAParent.setLeft(Optional.of(nodeB));
+                nodeAParent.setLeft(nodeB.asOptional());
             } else {
-                nodeAParent.setRight(Optional.of(nodeB));
+                nodeAParent.setRight(nodeB.asOptional());
             }
         }
         nodeB.setParent(nodeA.getParent());
-        nodeA.setParent(Optional.of(nodeB));
+        nodeA.setParent(nodeB.asOptional());
         nodeA.setRight(nodeB.getLeft());
-        nodeB.setLeft(Optional.of(nodeA));
+        if (nodeB.getLeft().isPresent()) {
+            nodeB.getLeft().get().setParent(nodeA.asOptional());
+        }
+        nodeB.setLeft(nodeA.asOptional());
+        nodeA.update();
+        nodeB.update();
         return nodeB;
     }
 
@@ -143,15 +865,15 @@ public class AvlTree<T extends Comparable> {
 
     private RebalanceType getRebalanceType(Node<T> unbalancedNode) {
         if (unbalancedNode.isLeftUnbalanced()) {
-            if (unbalancedNode.getLeft().get().isLeftUnbalanced()) {
-                return RebalanceType.RIGHT;
+            if (unbalancedNode.getLeft().get().isRightUnbalanced()) {
+                return RebalanceType.LEFT_RIGHT;
             }
-            return RebalanceType.LEFT_RIGHT;
+            return RebalanceType.RIGHT;
         }
-        else if (unbalancedNode.getRight().get().isRightUnbalanced()) {
-            return RebalanceType.LEFT;
+        else if (unbalancedNode.getRight().get().isLeftUnbalanced()) {
+            return RebalanceType.RIGHT_LEFT;
         }
-        return RebalanceType.RIGHT_LEFT;
+        return RebalanceType.LEFT;
     }
 
 
@@ -159,6 +881,247 @@ public class AvlTree<T extends Comparable> {
         return root;
     }
 
+    public boolean contains(T value) {
+        return find(value).isPresent();
+    }
+
+    /**
+     * @return a node holding a value equal to the given one
+     */
+    public Optional<Node<T>> find(T value) {
+        return Optional.ofNullable(search(value, AvlTreeListener.Operation.SEARCH));
+    }
+
+    private Node<T> search(T value, AvlTreeListener.Operation operation) {
+        int comparisons = 0;
+        Node<T> current = root;
+        while (current != null) {
+            int comparison = compare(value, current.getValue());
+            comparisons++;
+            if (comparison == 0) {
+                break;
+            }
+            current = comparison < 0 ? current.getLeft().orElse(null) : current.getRight().orElse(null);
+        }
+        if (listener != null) {
+            listener.onDescent(operation, comparisons);
+        }
+        return current;
+    }
+
+    /**
+     * @return the node with the greatest value less than or equal to the given one
+     */
+    public Optional<Node<T>> floor(T value) {
+        return Optional.ofNullable(below(value, true));
+    }
+
+    /**
+     * @return the node with the greatest value strictly less than the given one
+     */
+    public Optional<Node<T>> lower(T value) {
+        return Optional.ofNullable(below(value, false));
+    }
+
+    /**
+     * @return the node with the least value greater than or equal to the given one
+     */
+    public Optional<Node<T>> ceiling(T value) {
+        return Optional.ofNullable(above(value, true));
+    }
+
+    /**
+     * @return the node with the least value strictly greater than the given one
+     */
+    public Optional<Node<T>> higher(T value) {
+        return Optional.ofNullable(above(value, false));
+    }
+
+    public Optional<Node<T>> first() {
+        Node<T> current = root;
+        if (current == null) {
+            return Optional.empty();
+        }
+        while (current.getLeft().isPresent()) {
+            current = current.getLeft().get();
+        }
+        return current.asOptional();
+    }
+
+    public Optional<Node<T>> last() {
+        Node<T> current = root;
+        if (current == null) {
+            return Optional.empty();
+        }
+        while (current.getRight().isPresent()) {
+            current = current.getRight().get();
+        }
+        return current.asOptional();
+    }
+
+    private Node<T> below(T value, boolean inclusive) {
+        Node<T> candidate = null;
+        int comparisons = 0;
+        Node<T> current = root;
+        while (current != null) {
+            int comparison = compare(value, current.getValue());
+            comparisons++;
+            if (comparison == 0 && inclusive) {
+                candidate = current;
+                break;
+            }
+            if (comparison > 0) {
+                // current qualifies, look for a greater one on the right
+                candidate = current;
+                current = current.getRight().orElse(null);
+            } else {
+                current = current.getLeft().orElse(null);
+            }
+        }
+        if (listener != null) {
+            listener.onDescent(AvlTreeListener.Operation.SEARCH, comparisons);
+        }
+        return candidate;
+    }
+
+    private Node<T> above(T value, boolean inclusive) {
+        Node<T> candidate = null;
+        int comparisons = 0;
+        Node<T> current = root;
+        while (current != null) {
+            int comparison = compare(value, current.getValue());
+            comparisons++;
+            if (comparison == 0 && inclusive) {
+                candidate = current;
+                break;
+            }
+            if (comparison < 0) {
+                // current qualifies, look for a smaller one on the left
+                candidate = current;
+                current = current.getLeft().orElse(null);
+            } else {
+                current = current.getRight().orElse(null);
+            }
+        }
+        if (listener != null) {
+            listener.onDescent(AvlTreeListener.Operation.SEARCH, comparisons);
+        }
+        return candidate;
+    }
+
+    /**
+     * Checks in one pass over the nodes, O(n) time and O(height) memory, that values are ordered, children
+     * point back to their parents, every cached height and size matches the children, every node is balanced
+     * and the counts of the nodes add up to the size of the tree. Equal values may be on either side, rotations
+     * move them. Does not modify the tree, so it can run as a health check between operations.
+     * @return the first violation in pre-order, with the path from the root to it
+     */
+    public Optional<AvlViolation<T>> validate() {
+        if (root == null) {
+            return size == 0 ? Optional.empty() : Optional.of(new AvlViolation<>(AvlViolation.Type.TREE_SIZE,
+                    Collections.emptyList(), "empty tree has size " + size));
+        }
+        if (root.getParent().isPresent()) {
+            return Optional.of(new AvlViolation<>(AvlViolation.Type.PARENT_LINK, Collections.singletonList(root),
+                    "root has a parent"));
+        }
+        // the stack holds exactly the path from the root to the node being checked
+        ArrayList<ValidationFrame<T>> stack = new ArrayList<>();
+        stack.add(new ValidationFrame<>(root, null, null));
+        int visited = 0;
+        int occurrences = 0;
+        while (!stack.isEmpty()) {
+            ValidationFrame<T> frame = stack.get(stack.size() - 1);
+            Node<T> node = frame.node;
+            if (frame.state == 0) {
+                // every node counts at least once, this also stops on cycles
+                if (++visited > size) {
+                    return violation(AvlViolation.Type.TREE_SIZE, stack, "more than " + size + " nodes reachable");
+                }
+                occurrences += node.getCount();
+                Optional<AvlViolation<T>> violation = checkNode(frame, stack);
+                if (violation.isPresent()) {
+                    return violation;
+                }
+            }
+            if (frame.state == 2) {
+                stack.remove(stack.size() - 1);
+                continue;
+            }
+            // state 0 goes on with the left subtree, state 1 with the right one
+            Optional<Node<T>> child = frame.state == 0 ? node.getLeft() : node.getRight();
+            if (child.isPresent()) {
+                stack.add(frame.state == 0 ? new ValidationFrame<>(child.get(), frame.low, node.getValue())
+                        : new ValidationFrame<>(child.get(), node.getValue(), frame.high));
+            }
+            frame.state++;
+        }
+        if (occurrences != size) {
+            return violation(AvlViolation.Type.TREE_SIZE, Collections.emptyList(),
+                    occurrences + " values reachable, size is " + size);
+        }
+        return Optional.empty();
+    }
+
+    private static final class ValidationFrame<T extends Comparable> {
+        final Node<T> node;
+        // bounds from the ancestors, null for unbounded
+        final T low;
+        final T high;
+        int state;
+
+        ValidationFrame(Node<T> node, T low, T high) {
+            this.node = node;
+            this.low = low;
+            this.high = high;
+        }
+    }
+
+    private Optional<AvlViolation<T>> checkNode(ValidationFrame<T> frame, List<ValidationFrame<T>> path) {
+        Node<T> node = frame.node;
+        T low = frame.low;
+        T high = frame.high;
+        if (low != null && compare(node.getValue(), low) < 0 || high != null && compare(node.getValue(), high) > 0) {
+            return violation(AvlViolation.Type.ORDER, path, node.getValue() + " outside [" + low + ", " + high + "]");
+        }
+        Optional<Node<T>> left = node.getLeft();
+        Optional<Node<T>> right = node.getRight();
+        if (left.isPresent() && left.get().getParent().orElse(null) != node
+                || right.isPresent() && right.get().getParent().orElse(null) != node) {
+            return violation(AvlViolation.Type.PARENT_LINK, path, "child does not point back to " + node.getValue());
+        }
+        int leftHeight = left.isPresent() ? left.get().getHeight() : -1;
+        int rightHeight = right.isPresent() ? right.get().getHeight() : -1;
+        int expectedHeight = Math.max(leftHeight, rightHeight) + 1;
+        if (node.getHeight() != expectedHeight) {
+            return violation(AvlViolation.Type.HEIGHT, path,
+                    "cached height " + node.getHeight() + ", children give " + expectedHeight);
+        }
+        if (node.getCount() < 1) {
+            return violation(AvlViolation.Type.SIZE, path, "count " + node.getCount());
+        }
+        int expectedSize = node.getLeftSize() + (right.isPresent() ? right.get().getSize() : 0) + node.getCount();
+        if (node.getSize() != expectedSize) {
+            return violation(AvlViolation.Type.SIZE, path,
+                    "cached size " + node.getSize() + ", children give " + expectedSize);
+        }
+        if (Math.abs(leftHeight - rightHeight) > 1) {
+            return violation(AvlViolation.Type.BALANCE, path,
+                    "left height " + leftHeight + ", right height " + rightHeight);
+        }
+        return Optional.empty();
+    }
+
+    private static <T extends Comparable> Optional<AvlViolation<T>> violation(AvlViolation.Type type,
+                                                                              List<ValidationFrame<T>> stack,
+                                                                              String message) {
+        List<Node<T>> path = new ArrayList<>(stack.size());
+        for (ValidationFrame<T> frame : stack) {
+            path.add(frame.node);
+        }
+        return Optional.of(new AvlViolation<>(type, path, message));
+    }
+
     public Optional<AvlBalanceDetails<T>> findLowestLeftmostUnbalancedNode(Node<T> entryNode) {
         Node<T> current = entryNode;
         while (current.getLeft().isPresent())
@@ -202,55 +1165,240 @@ public class AvlTree<T extends Comparable> {
 
     }
 
+    /**
+     * Same text as {@link #writeTo(Appendable)}, built in a StringBuilder.
+     */
     @Override
     public String toString() {
-        return root.toString();
+        StringBuilder builder = new StringBuilder();
+        try {
+            writeTo(builder);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
     }
 
+    /**
+     * Streams the tree in the bracketed form of {@link Node#toString()}, like "[ A ] B [ C ]", nothing for an
+     * empty tree.
+     */
+    public void writeTo(Appendable out) throws IOException {
+        writeTo(out, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
 
-    private void insertNode(Node<T> currentNode, Node<T> insertNode) {
-        if (insertNode.getValue().compareTo(currentNode.getValue()) < 0) {
-            // go left
-            if (currentNode.getLeft().isPresent()) {
-                insertNode(currentNode.getLeft().get(), insertNode);
-            } else {
-                currentNode.setLeft(Optional.of(insertNode));
-                insertNode.setParent(Optional.of(currentNode));
-                return;
+    /**
+     * Like {@link #writeTo(Appendable)} but subtrees below maxDepth (the root is at depth 0) are written as
+     * "[...]" and after maxNodes values the rest is cut to " ... " with the open brackets closed.
+     */
+    public void writeTo(Appendable out, int maxDepth, int maxNodes) throws IOException {
+        if (root != null) {
+            writeSubtree(root, out, maxDepth, maxNodes);
+        }
+    }
+
+    /**
+     * Writes the subtree in order, iteratively, so neither the stack nor the copied text grows with the depth.
+     */
+    static <T extends Comparable> void writeSubtree(Node<T> top, Appendable out, int maxDepth, int maxNodes)
+            throws IOException {
+        writeSubtree(top, node -> node.getLeft().orElse(null), node -> node.getRight().orElse(null), Node::getValue,
+                out, maxDepth, maxNodes);
+    }
+
+    /**
+     * Same as {@link #writeSubtree(Node, Appendable, int, int)} for any kind of node, the ancestors of the
+     * current node are kept on a stack of at most maxDepth entries since not every node has a parent link.
+     * Nodes are never compared, so they can be boxed slot indices.
+     * @param left left child of a node, null if it has none
+     */
+    static <N> void writeSubtree(N top, Function<N, N> left, Function<N, N> right, Function<N, ?> value,
+                                 Appendable out, int maxDepth, int maxNodes) throws IOException {
+        ArrayDeque<N> ancestors = new ArrayDeque<>();
+        // whether the path went to the left child of the ancestor at the same position
+        ArrayDeque<Boolean> wentLeft = new ArrayDeque<>();
+        N node = top;
+        int written = 0;
+        descend:
+        while (true) {
+            for (N child = left.apply(node); child != null; child = left.apply(node)) {
+                if (ancestors.size() == maxDepth) {
+                    out.append("[...]");
+                    break;
+                }
+                out.append('[');
+                ancestors.push(node);
+                wentLeft.push(Boolean.TRUE);
+                node = child;
             }
-        } else {
-            // go right
-            if (currentNode.getRight().isPresent()) {
-                insertNode(currentNode.getRight().get(), insertNode);
-            } else {
-                currentNode.setRight(Optional.of(insertNode));
-                insertNode.setParent(Optional.of(currentNode));
-                return;
+            while (true) {
+                if (written == maxNodes) {
+                    out.append(" ... ");
+                    for (int depth = ancestors.size(); depth > 0; depth--) {
+                        out.append(']');
+                    }
+                    return;
+                }
+                out.append(' ').append(String.valueOf(value.apply(node))).append(' ');
+                written++;
+                N child = right.apply(node);
+                if (child != null) {
+                    if (ancestors.size() < maxDepth) {
+                        out.append('[');
+                        ancestors.push(node);
+                        wentLeft.push(Boolean.FALSE);
+                        node = child;
+                        continue descend;
+                    }
+                    out.append("[...]");
+                }
+                // climb out of finished subtrees until coming up from a left child, that parent is next
+                boolean fromLeft = false;
+                while (!fromLeft) {
+                    if (ancestors.isEmpty()) {
+                        return;
+                    }
+                    node = ancestors.pop();
+                    out.append(']');
+                    fromLeft = wentLeft.pop();
+                }
             }
         }
     }
 
-    private void getNodesAsList(List<Node<T>> accumulator, Node<T> entry) {
 
-        accumulator.add(entry);
-
-        if (entry.getRight().isPresent()) {
-            getNodesAsList(accumulator, entry.getRight().get());
+    /**
+     * Descends from the entry node and links the detached node as a new leaf. In a multiset the descent stops
+     * at a node holding an equal value instead.
+     * @return that equal node, null if the node was linked
+     */
+    private Node<T> insertNode(Node<T> entry, Node<T> insertNode) {
+        Node<T> currentNode = entry;
+        Node<T> equal = null;
+        int comparisons = 0;
+        while (true) {
+            comparisons++;
+            int comparison = compare(insertNode.getValue(), currentNode.getValue());
+            if (comparison == 0 && multiset) {
+                equal = currentNode;
+                break;
+            }
+            // equal values go right
+            Optional<Node<T>> child = comparison < 0 ? currentNode.getLeft() : currentNode.getRight();
+            if (!child.isPresent()) {
+                if (comparison < 0) {
+                    currentNode.setLeft(insertNode.asOptional());
+                } else {
+                    currentNode.setRight(insertNode.asOptional());
+                }
+                insertNode.setParent(currentNode.asOptional());
+                break;
+            }
+            currentNode = child.get();
         }
-
-        if (entry.getParent().isPresent() && entry.getParent().get().isMyLeftChild(entry)) {
-            getNodesAsList(accumulator, entry.getParent().get());
+        if (listener != null) {
+            listener.onDescent(AvlTreeListener.Operation.INSERT, comparisons);
         }
-
+        return equal;
     }
 
+    /**
+     * @return all nodes in order
+     */
     public List<Node<T>> getNodesAsList() {
-        List<Node<T>> result = new ArrayList<>();
-        Node<T> current = root;
-        while (current.getLeft().isPresent()) {
-            current = current.getLeft().get();
+        List<Node<T>> result = new ArrayList<>(size);
+        for (Node<T> node = leftmost(root); node != null; node = successor(node)) {
+            result.add(node);
         }
-        getNodesAsList(result, current);
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Walks successor links, no stack and no copy. Supports remove, other modifications of the tree during
+     * the iteration fail fast.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new NodeIterator(leftmost(root), true);
+    }
+
+    public Iterator<T> descendingIterator() {
+        return new NodeIterator(rightmost(root), false);
+    }
+
+    /**
+     * Splits at subtree boundaries, so parallel streams divide the work by halves of the tree.
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new AvlTreeSpliterator<>(root, comparator);
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Copies the values into an immutable array based tree for read only use, later changes to this tree are
+     * not reflected.
+     */
+    public FrozenAvlTree<T> freeze() {
+        return new FrozenAvlTree<>(this);
+    }
+
+    /**
+     * Yields the value of a node as many times as the node counts it.
+     */
+    private class NodeIterator implements Iterator<T> {
+        private final boolean ascending;
+        private Node<T> next;
+        // occurrences of next already returned
+        private int returned;
+        private Node<T> lastReturned;
+        private int expectedModCount = modCount;
+
+        NodeIterator(Node<T> first, boolean ascending) {
+            this.next = first;
+            this.ascending = ascending;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            lastReturned = next;
+            if (++returned == next.getCount()) {
+                next = ascending ? successor(next) : predecessor(next);
+                returned = 0;
+            }
+            return lastReturned.getValue();
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (lastReturned == next) {
+                // one of the occurrences already returned goes away
+                returned--;
+            }
+            // nodes keep their identity on removal so next is still the right node
+            removeOccurrence(lastReturned);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+    }
+}
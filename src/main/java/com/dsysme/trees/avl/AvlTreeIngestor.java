@@ -0,0 +1,426 @@
+package com.dsysme.trees.avl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Lets many producer threads feed one {@link AvlTree} without contending on the tree. Producers append to a
+ * lock free queue and get a sequence number, a single applier thread drains the queue in batches and applies
+ * each batch with {@link AvlTree#insertAll(java.util.Collection)}, which sorts it and merges it in one pass.
+ * A batch is applied once it has maxBatchSize values or maxLatency after its first value was taken, whichever
+ * comes first. At most bufferCapacity values wait in the queue, further producers block until there is room.
+ *
+ * The tree must only be touched through {@link #read(Function)} while the ingestor runs. If a batch cannot be
+ * applied, for example because its values cannot be compared, the futures of its values fail and so does
+ * waiting for any sequence number from the first failed one on.
+ */
+public class AvlTreeIngestor<T extends Comparable> implements AutoCloseable {
+
+    // how long the idle applier sleeps before looking at the queue again if no producer woke it up
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final class Entry<T> {
+        final T value;
+        final long sequence;
+        final CompletableFuture<Long> applied = new CompletableFuture<>();
+
+        Entry(T value, long sequence) {
+            this.value = value;
+            this.sequence = sequence;
+        }
+    }
+
+    private final AvlTree<T> tree;
+    private final int maxBatchSize;
+    private final long maxLatencyNanos;
+    private final ConcurrentLinkedQueue<Entry<T>> queue = new ConcurrentLinkedQueue<>();
+    private final Semaphore room;
+    // values in the queue not yet taken by the applier
+    private final AtomicInteger queued = new AtomicInteger();
+    // values submitted but not yet applied or failed
+    private final AtomicInteger depth = new AtomicInteger();
+    // queued count at which a producer wakes the applier, MAX_VALUE while the applier is busy
+    private volatile int wakeAt = Integer.MAX_VALUE;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final ReentrantReadWriteLock treeLock = new ReentrantReadWriteLock();
+    private final Thread applier;
+    private volatile boolean closed;
+    // set once the applier is done, values queued after that are failed by their producer
+    private volatile boolean stopped;
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    // guarded by this: sequence numbers done above the watermark, every one up to the watermark is done
+    private final PriorityQueue<Long> doneAhead = new PriorityQueue<>();
+    private long doneSequence;
+    private long firstFailedSequence = Long.MAX_VALUE;
+    private Throwable firstFailure;
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchedValues = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private AvlTreeIngestor(AvlTree<T> tree, int bufferCapacity, int maxBatchSize, long maxLatency, TimeUnit unit) {
+        if (bufferCapacity < 1 || maxBatchSize < 1 || maxLatency < 0) {
+            throw new IllegalArgumentException("Buffer capacity and batch size must be positive, latency not negative");
+        }
+        this.tree = tree;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLatencyNanos = unit.toNanos(maxLatency);
+        this.room = new Semaphore(bufferCapacity);
+        this.applier = new Thread(this::applyLoop, "avl-tree-ingestor");
+        this.applier.setDaemon(true);
+    }
+
+    /**
+     * Starts the applier thread.
+     * @param bufferCapacity most values waiting to be applied before producers block
+     * @param maxBatchSize most values applied at once
+     * @param maxLatency longest time a taken value waits for its batch to fill up
+     */
+    public static <T extends Comparable> AvlTreeIngestor<T> start(AvlTree<T> tree, int bufferCapacity, int maxBatchSize,
+                                                                  long maxLatency, TimeUnit unit) {
+        AvlTreeIngestor<T> ingestor = new AvlTreeIngestor<>(tree, bufferCapacity, maxBatchSize, maxLatency, unit);
+        ingestor.applier.start();
+        return ingestor;
+    }
+
+    /**
+     * Queues the value, waiting while the buffer is full.
+     * @return completes with the sequence number of the value once it is in the tree, exceptionally if the
+     * batch could not be applied
+     * @throws IllegalStateException if the ingestor is closed
+     */
+    public CompletableFuture<Long> submit(T value) throws InterruptedException {
+        checkOpen();
+        room.acquire();
+        return enqueue(value);
+    }
+
+    /**
+     * Like {@link #submit(Comparable)} but gives up at once when the buffer is full.
+     * @return empty if the buffer is full
+     */
+    public Optional<CompletableFuture<Long>> offer(T value) {
+        checkOpen();
+        if (!room.tryAcquire()) {
+            return Optional.empty();
+        }
+        return Optional.of(enqueue(value));
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Ingestor is closed");
+        }
+    }
+
+    private CompletableFuture<Long> enqueue(T value) {
+        Entry<T> entry = new Entry<>(value, nextSequence.incrementAndGet());
+        depth.incrementAndGet();
+        queue.offer(entry);
+        if (queued.incrementAndGet() >= wakeAt) {
+            LockSupport.unpark(applier);
+        }
+        if (stopped) {
+            // close() raced with this call and the applier may have missed the entry
+            failLeftovers();
+        }
+        return entry.applied;
+    }
+
+    private Entry<T> take() {
+        Entry<T> entry = queue.poll();
+        if (entry != null) {
+            queued.decrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Parks the applier until that many more values are queued, the timeout passes or it is closed.
+     */
+    private void await(int values, long nanos) {
+        wakeAt = values;
+        // a producer that queued before seeing wakeAt did not unpark
+        if (queued.get() < values && !closed) {
+            LockSupport.parkNanos(this, nanos);
+        }
+        wakeAt = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Runs a query on the tree while no batch is being applied.
+     */
+    public <R> R read(Function<? super AvlTree<T>, R> query) {
+        treeLock.readLock().lock();
+        try {
+            return query.apply(tree);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the greatest sequence number such that it and every smaller one are applied, it stops before the
+     * first value that failed
+     */
+    public synchronized long getAppliedSequence() {
+        return Math.min(doneSequence, firstFailedSequence - 1);
+    }
+
+    /**
+     * Waits until every value with a sequence number up to the given one is applied.
+     * @throws IllegalStateException if one of them failed, with the failure of the first one as the cause
+     */
+    public synchronized void awaitApplied(long sequence) throws InterruptedException {
+        while (doneSequence < sequence) {
+            checkApplied(sequence);
+            wait();
+        }
+        checkApplied(sequence);
+    }
+
+    /**
+     * @return false if the timeout elapsed first
+     * @throws IllegalStateException if one of them failed, with the failure of the first one as the cause
+     */
+    public synchronized boolean awaitApplied(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (doneSequence < sequence) {
+            checkApplied(sequence);
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        checkApplied(sequence);
+        return true;
+    }
+
+    private void checkApplied(long sequence) {
+        if (firstFailedSequence <= sequence) {
+            throw new IllegalStateException("Value " + firstFailedSequence + " was not applied", firstFailure);
+        }
+    }
+
+    private void applyLoop() {
+        List<Entry<T>> batch = new ArrayList<>(maxBatchSize);
+        List<T> values = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            Entry<T> first = take();
+            if (first == null) {
+                await(1, IDLE_PARK_NANOS);
+                continue;
+            }
+            batch.add(first);
+            long deadline = System.nanoTime() + maxLatencyNanos;
+            while (batch.size() < maxBatchSize) {
+                Entry<T> entry = take();
+                if (entry != null) {
+                    batch.add(entry);
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || closed) {
+                    break;
+                }
+                // woken early once the values filling the batch are queued
+                await(maxBatchSize - batch.size(), remaining);
+            }
+            apply(batch, values);
+            batch.clear();
+            values.clear();
+        }
+        stopped = true;
+        failLeftovers();
+        terminated.countDown();
+    }
+
+    /**
+     * Fails the values queued after the applier finished, may run on the applier and producers at once.
+     */
+    private void failLeftovers() {
+        List<Entry<T>> leftovers = new ArrayList<>();
+        for (Entry<T> entry = take(); entry != null; entry = take()) {
+            leftovers.add(entry);
+        }
+        if (!leftovers.isEmpty()) {
+            complete(leftovers, new IllegalStateException("Ingestor is closed"));
+        }
+    }
+
+    private void apply(List<Entry<T>> batch, List<T> values) {
+        for (Entry<T> entry : batch) {
+            values.add(entry.value);
+        }
+        RuntimeException failure = null;
+        treeLock.writeLock().lock();
+        try {
+            tree.insertAll(values);
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+        batches.incrementAndGet();
+        batchedValues.addAndGet(batch.size());
+        complete(batch, failure);
+    }
+
+    /**
+     * Frees the room of the values and completes their futures, exceptionally unless the failure is null.
+     */
+    private void complete(List<Entry<T>> entries, Throwable failure) {
+        depth.addAndGet(-entries.size());
+        room.release(entries.size());
+        if (failure == null) {
+            applied.addAndGet(entries.size());
+        } else {
+            failed.addAndGet(entries.size());
+        }
+        advanceWatermark(entries, failure);
+        for (Entry<T> entry : entries) {
+            if (failure == null) {
+                entry.applied.complete(entry.sequence);
+            } else {
+                entry.applied.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Producers may enqueue out of sequence order, so the watermark only moves over a contiguous run.
+     */
+    private synchronized void advanceWatermark(List<Entry<T>> entries, Throwable failure) {
+        for (Entry<T> entry : entries) {
+            doneAhead.add(entry.sequence);
+            if (failure != null && entry.sequence < firstFailedSequence) {
+                firstFailedSequence = entry.sequence;
+                firstFailure = failure;
+            }
+        }
+        long watermark = doneSequence;
+        while (!doneAhead.isEmpty() && doneAhead.peek() == watermark + 1) {
+            watermark = doneAhead.poll();
+        }
+        if (watermark != doneSequence || failure != null) {
+            doneSequence = watermark;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stops accepting values, applies everything already queued and waits for the applier thread to stop.
+     * Values submitted while closing are either applied or their futures fail. If the calling thread is
+     * interrupted it stops waiting and keeps its interrupt status, the applier still finishes on its own,
+     * see {@link #awaitTermination(long, TimeUnit)}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(applier);
+        try {
+            terminated.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the applier to stop after {@link #close()}.
+     * @return false if the timeout elapsed first
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(nextSequence.get(), applied.get(), failed.get(), batches.get(), batchedValues.get(),
+                depth.get(), getAppliedSequence(), System.nanoTime() - startNanos);
+    }
+
+    public static class Statistics {
+        private final long submitted;
+        private final long applied;
+        private final long failed;
+        private final long batches;
+        private final long batchedValues;
+        private final int queueDepth;
+        private final long appliedSequence;
+        private final long elapsedNanos;
+
+        Statistics(long submitted, long applied, long failed, long batches, long batchedValues, int queueDepth,
+                   long appliedSequence, long elapsedNanos) {
+            this.submitted = submitted;
+            this.applied = applied;
+            this.failed = failed;
+            this.batches = batches;
+            this.batchedValues = batchedValues;
+            this.queueDepth = queueDepth;
+            this.appliedSequence = appliedSequence;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getApplied() {
+            return applied;
+        }
+
+        /**
+         * @return values whose batch could not be applied or that were queued while closing too late to be applied
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * @return values queued but not applied yet
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getAppliedSequence() {
+            return appliedSequence;
+        }
+
+        public double getAverageBatchSize() {
+            return batches == 0 ? 0 : (double) batchedValues / batches;
+        }
+
+        /**
+         * @return values applied per second since the ingestor started
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : applied * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "submitted=" + submitted + " applied=" + applied + " failed=" + failed + " batches=" + batches
+                    + " queueDepth=" + queueDepth + " appliedSequence=" + appliedSequence;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.dsysme.trees.avl;
+
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Join based bulk operations on detached subtrees, after Blelloch, Ferizovic and Sun, "Just Join for Parallel
+ * Ordered Sets". Everything is built from join, which links two trees and a middle node in time proportional
+ * to their height difference. Union, intersection and difference split one tree by the root of the other and
+ * recurse on both sides independently, which takes O(m log(n/m + 1)) work for sizes m <= n and lets the two
+ * recursive calls run in parallel.
+ *
+ * The subtrees passed in are consumed, their nodes are relinked into the result. Subtree roots handed around
+ * have no parent, null stands for an empty subtree.
+ */
+final class AvlTreeJoin<T extends Comparable> {
+
+    // below this many nodes in both operands forking costs more than it saves
+    static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    enum Operation {
+        UNION,
+        INTERSECTION,
+        DIFFERENCE
+    }
+
+    private final Comparator<? super T> comparator;
+
+    AvlTreeJoin(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+
+    static int height(Node<?> node) {
+        return node == null ? -1 : node.getHeight();
+    }
+
+    static int size(Node<?> node) {
+        return node == null ? 0 : node.getSize();
+    }
+
+    /**
+     * @return the child with its parent link cleared, null if there is none
+     */
+    private static <T extends Comparable> Node<T> detach(Optional<Node<T>> child) {
+        child.ifPresent(node -> node.setParent(Optional.empty()));
+        return child.orElse(null);
+    }
+
+    /**
+     * Makes left and right the children of the middle node and refreshes its caches, no rebalancing.
+     */
+    private static <T extends Comparable> Node<T> link(Node<T> left, Node<T> middle, Node<T> right) {
+        middle.setParent(Optional.empty());
+        middle.setLeft(left == null ? Optional.empty() : left.asOptional());
+        middle.setRight(right == null ? Optional.empty() : right.asOptional());
+        if (left != null) {
+            left.setParent(middle.asOptional());
+        }
+        if (right != null) {
+            right.setParent(middle.asOptional());
+        }
+        middle.update();
+        return middle;
+    }
+
+    private static <T extends Comparable> Node<T> rotateLeft(Node<T> node) {
+        Node<T> right = node.getRight().get();
+        Node<T> inner = right.getLeft().orElse(null);
+        Node<T> outer = right.getRight().orElse(null);
+        return link(link(node.getLeft().orElse(null), node, inner), right, outer);
+    }
+
+    private static <T extends Comparable> Node<T> rotateRight(Node<T> node) {
+        Node<T> left = node.getLeft().get();
+        Node<T> inner = left.getRight().orElse(null);
+        Node<T> outer = left.getLeft().orElse(null);
+        return link(outer, left, link(inner, node, node.getRight().orElse(null)));
+    }
+
+    /**
+     * Links left, middle and right into one balanced tree, all values of left must be ordered before the middle
+     * and all of right after it.
+     */
+    static <T extends Comparable> Node<T> join(Node<T> left, Node<T> middle, Node<T> right) {
+        if (height(left) > height(right) + 1) {
+            return joinRight(left, middle, right);
+        }
+        if (height(right) > height(left) + 1) {
+            return joinLeft(left, middle, right);
+        }
+        return link(left, middle, right);
+    }
+
+    /**
+     * Descends the right spine of the taller left tree to a subtree of about the height of right.
+     */
+    private static <T extends Comparable> Node<T> joinRight(Node<T> left, Node<T> middle, Node<T> right) {
+        Node<T> leftLeft = left.getLeft().orElse(null);
+        Node<T> leftRight = left.getRight().orElse(null);
+        Node<T> joined = height(leftRight) <= height(right) + 1
+                ? link(leftRight, middle, right)
+                : joinRight(leftRight, middle, right);
+        if (height(joined) <= height(leftLeft) + 1) {
+            return link(leftLeft, left, joined);
+        }
+        if (joined.getLeft().isPresent() && height(joined.getLeft().get()) > height(joined.getRight().orElse(null))) {
+            // the heavy side of the joined subtree is inner, needs a double rotation
+            joined = rotateRight(joined);
+        }
+        return rotateLeft(link(leftLeft, left, joined));
+    }
+
+    private static <T extends Comparable> Node<T> joinLeft(Node<T> left, Node<T> middle, Node<T> right) {
+        Node<T> rightLeft = right.getLeft().orElse(null);
+        Node<T> rightRight = right.getRight().orElse(null);
+        Node<T> joined = height(rightLeft) <= height(left) + 1
+                ? link(left, middle, rightLeft)
+                : joinLeft(left, middle, rightLeft);
+        if (height(joined) <= height(rightRight) + 1) {
+            return link(joined, right, rightRight);
+        }
+        if (joined.getRight().isPresent() && height(joined.getRight().get()) > height(joined.getLeft().orElse(null))) {
+            joined = rotateLeft(joined);
+        }
+        return rotateRight(link(joined, right, rightRight));
+    }
+
+    /**
+     * Joins two trees without a middle node by taking the last node of left as the middle.
+     */
+    static <T extends Comparable> Node<T> join(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        Node<T> last = AvlTree.rightmost(left);
+        Node<T> rest = removeLast(left);
+        return join(rest, last, right);
+    }
+
+    /**
+     * @return the tree without its rightmost node, rebalanced
+     */
+    private static <T extends Comparable> Node<T> removeLast(Node<T> node) {
+        if (!node.getRight().isPresent()) {
+            return detach(node.getLeft());
+        }
+        Node<T> right = removeLast(detach(node.getRight()));
+        return join(detach(node.getLeft()), node, right);
+    }
+
+    /**
+     * Splits at the key: values ordered before it, one node equal to it if any, values ordered after it.
+     * Further equal values may be on either side.
+     * @return left subtree, detached equal node or null, right subtree
+     */
+    @SuppressWarnings("unchecked")
+    Node<T>[] split(Node<T> node, T key) {
+        if (node == null) {
+            return new Node[]{null, null, null};
+        }
+        Node<T> left = detach(node.getLeft());
+        Node<T> right = detach(node.getRight());
+        int comparison = compare(key, node.getValue());
+        if (comparison == 0) {
+            return new Node[]{left, link(null, node, null), right};
+        }
+        if (comparison < 0) {
+            Node<T>[] parts = split(left, key);
+            parts[2] = join(parts[2], node, right);
+            return parts;
+        }
+        Node<T>[] parts = split(right, key);
+        parts[0] = join(left, node, parts[0]);
+        return parts;
+    }
+
+    Node<T> apply(Operation operation, Node<T> first, Node<T> second) {
+        if (size(first) + size(second) < PARALLEL_THRESHOLD) {
+            return compute(operation, first, second);
+        }
+        return ForkJoinPool.commonPool().invoke(new OperationTask(operation, first, second));
+    }
+
+    private Node<T> compute(Operation operation, Node<T> first, Node<T> second) {
+        switch (operation) {
+            case UNION:
+                return union(first, second);
+            case INTERSECTION:
+                return intersection(first, second);
+            default:
+                return difference(first, second);
+        }
+    }
+
+    /**
+     * Values of both trees, a value of second equal to one of first is dropped. Equal values keep the greater
+     * count of their two nodes.
+     */
+    private Node<T> union(Node<T> first, Node<T> second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        Node<T> firstLeft = detach(first.getLeft());
+        Node<T> firstRight = detach(first.getRight());
+        Node<T>[] parts = split(second, first.getValue());
+        if (parts[1] != null && parts[1].getCount() > first.getCount()) {
+            // join refreshes the size
+            first.setCount(parts[1].getCount());
+        }
+        Node<T>[] sides = recurse(Operation.UNION, firstLeft, parts[0], firstRight, parts[2]);
+        return join(sides[0], first, sides[1]);
+    }
+
+    /**
+     * Values of first that have an equal value in second, with the smaller count of the two nodes.
+     */
+    private Node<T> intersection(Node<T> first, Node<T> second) {
+        if (first == null || second == null) {
+            return null;
+        }
+        Node<T> firstLeft = detach(first.getLeft());
+        Node<T> firstRight = detach(first.getRight());
+        Node<T>[] parts = split(second, first.getValue());
+        Node<T>[] sides = recurse(Operation.INTERSECTION, firstLeft, parts[0], firstRight, parts[2]);
+        if (parts[1] == null) {
+            return join(sides[0], sides[1]);
+        }
+        first.setCount(Math.min(first.getCount(), parts[1].getCount()));
+        return join(sides[0], first, sides[1]);
+    }
+
+    /**
+     * Values of first without an equal value in second. An equal value keeps the occurrences of first left over
+     * after taking away those of second.
+     */
+    private Node<T> difference(Node<T> first, Node<T> second) {
+        if (first == null || second == null) {
+            return first;
+        }
+        Node<T> secondLeft = detach(second.getLeft());
+        Node<T> secondRight = detach(second.getRight());
+        Node<T>[] parts = split(first, second.getValue());
+        Node<T>[] sides = recurse(Operation.DIFFERENCE, parts[0], secondLeft, parts[2], secondRight);
+        if (parts[1] == null || parts[1].getCount() <= second.getCount()) {
+            return join(sides[0], sides[1]);
+        }
+        parts[1].setCount(parts[1].getCount() - second.getCount());
+        return join(sides[0], parts[1], sides[1]);
+    }
+
+    /**
+     * Applies the operation to both pairs of sides, forking the left pair when the operands are large enough.
+     */
+    @SuppressWarnings("unchecked")
+    private Node<T>[] recurse(Operation operation, Node<T> firstLeft, Node<T> secondLeft,
+                              Node<T> firstRight, Node<T> secondRight) {
+        if (size(firstLeft) + size(secondLeft) + size(firstRight) + size(secondRight) < PARALLEL_THRESHOLD) {
+            return new Node[]{compute(operation, firstLeft, secondLeft), compute(operation, firstRight, secondRight)};
+        }
+        OperationTask leftTask = new OperationTask(operation, firstLeft, secondLeft);
+        leftTask.fork();
+        Node<T> right = compute(operation, firstRight, secondRight);
+        return new Node[]{leftTask.join(), right};
+    }
+
+    private final class OperationTask extends RecursiveTask<Node<T>> {
+        // ForkJoinTask is serializable, tasks of this class never are serialized
+        private static final long serialVersionUID = 1L;
+
+        private final Operation operation;
+        private final Node<T> first;
+        private final Node<T> second;
+
+        OperationTask(Operation operation, Node<T> first, Node<T> second) {
+            this.operation = operation;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        protected Node<T> compute() {
+            return AvlTreeJoin.this.compute(operation, first, second);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.dsysme.trees.avl;
+
+/**
+ * Receives events from an {@link AvlTree} it is attached to with {@link AvlTree#setListener(AvlTreeListener)}.
+ * Callbacks run synchronously on the thread modifying or searching the tree, so they should be cheap.
+ * Without a listener the tree only pays a null check per operation.
+ */
+public interface AvlTreeListener {
+
+    enum Operation {
+        SEARCH,
+        INSERT,
+        REMOVE
+    }
+
+    /**
+     * One descent from the root finished.
+     * @param comparisons values compared on the way, which is also the length of the search path in nodes
+     */
+    default void onDescent(Operation operation, int comparisons) {
+    }
+
+    /**
+     * The tree rotated an unbalanced node while rebalancing.
+     */
+    default void onRotation(RebalanceType type) {
+    }
+
+    /**
+     * The tree was modified.
+     * @param height height of the root, -1 for an empty tree
+     */
+    default void onModification(int size, int height) {
+    }
+}
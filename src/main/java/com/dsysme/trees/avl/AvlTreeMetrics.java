@@ -0,0 +1,217 @@
+package com.dsysme.trees.avl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counting listener, attach it to one tree and read it from any thread through the getters, {@link #snapshot()}
+ * or JMX. Counters are atomic so readers see recent values, the tree itself stays single threaded.
+ */
+public class AvlTreeMetrics implements AvlTreeListener, AvlTreeMetricsMXBean {
+
+    // an AVL tree of height h has more than fib(h + 3) - 1 nodes, 64 covers any tree that fits in memory
+    static final int HISTOGRAM_BUCKETS = 64;
+
+    private static final RebalanceType[] ROTATIONS = {
+            RebalanceType.LEFT, RebalanceType.RIGHT, RebalanceType.LEFT_RIGHT, RebalanceType.RIGHT_LEFT
+    };
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final AtomicLongArray rotations = new AtomicLongArray(RebalanceType.values().length);
+    private final AtomicLongArray descents = new AtomicLongArray(OPERATIONS.length);
+    private final AtomicLongArray comparisons = new AtomicLongArray(OPERATIONS.length);
+    private final AtomicLongArray pathLengths = new AtomicLongArray(HISTOGRAM_BUCKETS);
+    private volatile int size;
+    private volatile int height = -1;
+
+    @Override
+    public void onDescent(Operation operation, int comparisons) {
+        descents.incrementAndGet(operation.ordinal());
+        this.comparisons.addAndGet(operation.ordinal(), comparisons);
+        pathLengths.incrementAndGet(Math.min(comparisons, HISTOGRAM_BUCKETS - 1));
+    }
+
+    @Override
+    public void onRotation(RebalanceType type) {
+        rotations.incrementAndGet(type.ordinal());
+    }
+
+    @Override
+    public void onModification(int size, int height) {
+        this.size = size;
+        this.height = height;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public long getRotations(RebalanceType type) {
+        return rotations.get(type.ordinal());
+    }
+
+    @Override
+    public long getLeftRotations() {
+        return getRotations(RebalanceType.LEFT);
+    }
+
+    @Override
+    public long getRightRotations() {
+        return getRotations(RebalanceType.RIGHT);
+    }
+
+    @Override
+    public long getLeftRightRotations() {
+        return getRotations(RebalanceType.LEFT_RIGHT);
+    }
+
+    @Override
+    public long getRightLeftRotations() {
+        return getRotations(RebalanceType.RIGHT_LEFT);
+    }
+
+    public long getDescents(Operation operation) {
+        return descents.get(operation.ordinal());
+    }
+
+    public long getComparisons(Operation operation) {
+        return comparisons.get(operation.ordinal());
+    }
+
+    @Override
+    public long getSearches() {
+        return getDescents(Operation.SEARCH);
+    }
+
+    @Override
+    public long getInserts() {
+        return getDescents(Operation.INSERT);
+    }
+
+    @Override
+    public long getRemoves() {
+        return getDescents(Operation.REMOVE);
+    }
+
+    @Override
+    public long getComparisons() {
+        long total = 0;
+        for (Operation operation : OPERATIONS) {
+            total += getComparisons(operation);
+        }
+        return total;
+    }
+
+    @Override
+    public double getAverageComparisons() {
+        long total = 0;
+        for (Operation operation : OPERATIONS) {
+            total += getDescents(operation);
+        }
+        return total == 0 ? 0 : (double) getComparisons() / total;
+    }
+
+    @Override
+    public long[] getPathLengthHistogram() {
+        long[] histogram = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram[i] = pathLengths.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < rotations.length(); i++) {
+            rotations.set(i, 0);
+        }
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            descents.set(i, 0);
+            comparisons.set(i, 0);
+        }
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            pathLengths.set(i, 0);
+        }
+    }
+
+    /**
+     * Copies the counters, each one is read atomically but not all of them at the same instant.
+     */
+    public Snapshot snapshot() {
+        Map<RebalanceType, Long> rotationCounts = new EnumMap<>(RebalanceType.class);
+        for (RebalanceType type : ROTATIONS) {
+            rotationCounts.put(type, getRotations(type));
+        }
+        Map<Operation, Long> descentCounts = new EnumMap<>(Operation.class);
+        Map<Operation, Long> comparisonCounts = new EnumMap<>(Operation.class);
+        for (Operation operation : OPERATIONS) {
+            descentCounts.put(operation, getDescents(operation));
+            comparisonCounts.put(operation, getComparisons(operation));
+        }
+        return new Snapshot(size, height, rotationCounts, descentCounts, comparisonCounts, getPathLengthHistogram());
+    }
+
+    public static class Snapshot {
+        private final int size;
+        private final int height;
+        private final Map<RebalanceType, Long> rotations;
+        private final Map<Operation, Long> descents;
+        private final Map<Operation, Long> comparisons;
+        private final long[] pathLengthHistogram;
+
+        Snapshot(int size, int height, Map<RebalanceType, Long> rotations, Map<Operation, Long> descents,
+                 Map<Operation, Long> comparisons, long[] pathLengthHistogram) {
+            this.size = size;
+            this.height = height;
+            this.rotations = rotations;
+            this.descents = descents;
+            this.comparisons = comparisons;
+            this.pathLengthHistogram = pathLengthHistogram;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public long getRotations(RebalanceType type) {
+            return rotations.getOrDefault(type, 0L);
+        }
+
+        public long getDescents(Operation operation) {
+            return descents.get(operation);
+        }
+
+        public long getComparisons(Operation operation) {
+            return comparisons.get(operation);
+        }
+
+        /**
+         * @return mean comparisons per descent of the operation, 0 if there was none
+         */
+        public double getAverageComparisons(Operation operation) {
+            long count = getDescents(operation);
+            return count == 0 ? 0 : (double) getComparisons(operation) / count;
+        }
+
+        public long[] getPathLengthHistogram() {
+            return pathLengthHistogram.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "size=" + size + " height=" + height + " rotations=" + rotations + " descents=" + descents
+                    + " comparisons=" + comparisons;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.dsysme.trees.avl;
+
+/**
+ * JMX view of {@link AvlTreeMetrics}, register it with
+ * {@code ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("..."))}.
+ */
+public interface AvlTreeMetricsMXBean {
+
+    int getSize();
+
+    int getHeight();
+
+    long getLeftRotations();
+
+    long getRightRotations();
+
+    long getLeftRightRotations();
+
+    long getRightLeftRotations();
+
+    long getSearches();
+
+    long getInserts();
+
+    long getRemoves();
+
+    long getComparisons();
+
+    double getAverageComparisons();
+
+    /**
+     * @return number of descents by length of the search path, the last bucket also counts longer paths
+     */
+    long[] getPathLengthHistogram();
+
+    void reset();
+}
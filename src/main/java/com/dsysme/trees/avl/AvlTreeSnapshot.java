@@ -0,0 +1,239 @@
+package com.dsysme.trees.avl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Saves a tree as its values in order, each one {@link KeyCodec#width()} bytes after a 16 byte header
+ * (magic, key width, flags, count). A value occurring several times in a multiset is repeated. A sorted array
+ * is enough to rebuild a perfectly balanced tree in one pass without comparing or rotating, and can be binary
+ * searched in place, see {@link #map(Path, KeyCodec)}.
+ */
+public class AvlTreeSnapshot<T extends Comparable> {
+
+    private static final int MAGIC = 0x41564C31; // "AVL1"
+    private static final int HEADER_SIZE = 16;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final int MULTISET_FLAG = 1;
+
+    private final MappedByteBuffer buffer;
+    private final KeyCodec<T> codec;
+    private final Comparator<? super T> comparator;
+    private final int size;
+    private final boolean multiset;
+
+    private AvlTreeSnapshot(MappedByteBuffer buffer, KeyCodec<T> codec, Comparator<? super T> comparator) {
+        this.buffer = buffer;
+        this.codec = codec;
+        this.comparator = comparator;
+        this.size = readHeader(buffer, codec);
+        this.multiset = (buffer.getInt(8) & MULTISET_FLAG) != 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the codec width is not positive
+     */
+    public static <T extends Comparable> void save(AvlTree<T> tree, Path file, KeyCodec<T> codec) throws IOException {
+        int width = codec.width();
+        if (width < 1) {
+            throw new IllegalArgumentException("Key width must be positive, was " + width);
+        }
+        int bufferSize = Math.max(width, WRITE_BUFFER_SIZE / width * width);
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(HEADER_SIZE, bufferSize));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.putInt(MAGIC).putInt(width).putInt(tree.isMultiset() ? MULTISET_FLAG : 0).putInt(tree.size());
+            flip(buffer, channel);
+            for (T value : tree) {
+                if (buffer.remaining() < width) {
+                    flip(buffer, channel);
+                }
+                int start = buffer.position();
+                codec.write(buffer, value);
+                if (buffer.position() - start != width) {
+                    throw new IllegalArgumentException("Codec wrote " + (buffer.position() - start)
+                            + " bytes instead of " + width);
+                }
+            }
+            flip(buffer, channel);
+        }
+    }
+
+    private static void flip(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Rebuilds a tree with natural ordering from a saved snapshot.
+     */
+    public static <T extends Comparable> AvlTree<T> load(Path file, KeyCodec<T> codec) throws IOException {
+        return load(file, codec, null);
+    }
+
+    /**
+     * @param comparator the ordering the snapshot was saved with, null for natural ordering
+     */
+    public static <T extends Comparable> AvlTree<T> load(Path file, KeyCodec<T> codec, Comparator<? super T> comparator)
+            throws IOException {
+        return map(file, codec, comparator).toTree();
+    }
+
+    /**
+     * Serves read only lookups straight from the mapped file, values are decoded only when compared.
+     */
+    public static <T extends Comparable> AvlTreeSnapshot<T> map(Path file, KeyCodec<T> codec) throws IOException {
+        return map(file, codec, null);
+    }
+
+    /**
+     * @param comparator the ordering the snapshot was saved with, null for natural ordering
+     */
+    public static <T extends Comparable> AvlTreeSnapshot<T> map(Path file, KeyCodec<T> codec,
+                                                                Comparator<? super T> comparator) throws IOException {
+        return new AvlTreeSnapshot<>(mapReadOnly(file), codec, comparator);
+    }
+
+    private static MappedByteBuffer mapReadOnly(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Snapshot larger than 2GB cannot be mapped: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static int readHeader(ByteBuffer buffer, KeyCodec<?> codec) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a tree snapshot");
+        }
+        int width = buffer.getInt(4);
+        if (width != codec.width()) {
+            throw new IllegalArgumentException("Snapshot has " + width + " byte keys, codec expects " + codec.width());
+        }
+        int count = buffer.getInt(12);
+        if (count < 0 || HEADER_SIZE + (long) count * width != buffer.capacity()) {
+            throw new IllegalArgumentException("Snapshot of " + count + " keys does not match file size "
+                    + buffer.capacity());
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return whether the snapshot was saved from a multiset, {@link #toTree()} then builds one
+     */
+    public boolean isMultiset() {
+        return multiset;
+    }
+
+    /**
+     * @param index zero based position in order
+     * @throws IndexOutOfBoundsException unless 0 <= index < size
+     */
+    public T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of snapshot of size " + size);
+        }
+        return codec.read(buffer, HEADER_SIZE + index * codec.width());
+    }
+
+    public boolean contains(T value) {
+        int index = rank(value, false);
+        return index < size && compare(get(index), value) == 0;
+    }
+
+    /**
+     * @return the greatest value less than or equal to the given one
+     */
+    public Optional<T> floor(T value) {
+        return at(rank(value, true) - 1);
+    }
+
+    /**
+     * @return the greatest value strictly less than the given one
+     */
+    public Optional<T> lower(T value) {
+        return at(rank(value, false) - 1);
+    }
+
+    /**
+     * @return the least value greater than or equal to the given one
+     */
+    public Optional<T> ceiling(T value) {
+        return at(rank(value, false));
+    }
+
+    /**
+     * @return the least value strictly greater than the given one
+     */
+    public Optional<T> higher(T value) {
+        return at(rank(value, true));
+    }
+
+    /**
+     * @return number of values less than the given one, or less than or equal to it when inclusive
+     */
+    public int rank(T value, boolean inclusive) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(get(middle), value);
+            if (comparison < 0 || comparison == 0 && inclusive) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Rebuilds an in memory tree from the mapped values in one linear pass. For a multiset each run of equal
+     * values becomes one node counting them.
+     */
+    public AvlTree<T> toTree() {
+        List<Node<T>> nodes = new ArrayList<>(size);
+        Node<T> last = null;
+        for (int i = 0; i < size; i++) {
+            T value = get(i);
+            if (multiset && last != null && compare(last.getValue(), value) == 0) {
+                // linkBalanced refreshes the sizes afterwards
+                last.setCount(last.getCount() + 1);
+            } else {
+                last = new Node<>(value);
+                nodes.add(last);
+            }
+        }
+        return new AvlTree<>(comparator, multiset, AvlTree.linkBalanced(nodes, 0, nodes.size()));
+    }
+
+    private Optional<T> at(int index) {
+        return index >= 0 && index < size ? Optional.of(get(index)) : Optional.empty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+}
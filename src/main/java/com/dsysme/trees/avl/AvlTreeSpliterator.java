@@ -0,0 +1,100 @@
+package com.dsysme.trees.avl;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Covers an optional head node followed by a whole subtree, in order. Splitting at the subtree root x gives
+ * (head, x.left) and (x, x.right), both again of that shape, so the halves are cut along subtree boundaries
+ * without visiting any node and their exact sizes come from the cached subtree sizes.
+ * Once traversal started the spliterator no longer splits.
+ */
+class AvlTreeSpliterator<T extends Comparable> implements Spliterator<T> {
+
+    private final Comparator<? super T> comparator;
+    private Node<T> head;
+    private Node<T> subtree;
+    private long remaining;
+    // traversal state, current is null before the start and after the end
+    private boolean started;
+    private Node<T> current;
+    private Node<T> end;
+    // occurrences of current already passed on
+    private int returned;
+
+    AvlTreeSpliterator(Node<T> root, Comparator<? super T> comparator) {
+        this(null, root, comparator);
+    }
+
+    private AvlTreeSpliterator(Node<T> head, Node<T> subtree, Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        this.head = head;
+        this.subtree = subtree;
+        this.remaining = (head != null ? head.getCount() : 0) + (subtree != null ? subtree.getSize() : 0);
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        while (!started && subtree != null) {
+            Node<T> splitNode = subtree;
+            Node<T> left = splitNode.getLeft().orElse(null);
+            if (head == null && left == null) {
+                // nothing before the split node, make it the head and look at its right subtree
+                head = splitNode;
+                subtree = splitNode.getRight().orElse(null);
+                continue;
+            }
+            AvlTreeSpliterator<T> prefix = new AvlTreeSpliterator<>(head, left, comparator);
+            head = splitNode;
+            subtree = splitNode.getRight().orElse(null);
+            remaining -= prefix.remaining;
+            return prefix;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (!started) {
+            started = true;
+            current = head != null ? head : AvlTree.leftmost(subtree);
+            end = subtree != null ? AvlTree.rightmost(subtree) : head;
+        }
+        if (current == null) {
+            return false;
+        }
+        Node<T> node = current;
+        remaining--;
+        if (++returned < node.getCount()) {
+            action.accept(node.getValue());
+            return true;
+        }
+        returned = 0;
+        if (node == end) {
+            current = null;
+        } else if (node == head) {
+            current = AvlTree.leftmost(subtree);
+        } else {
+            current = AvlTree.successor(node);
+        }
+        action.accept(node.getValue());
+        return true;
+    }
+
+    @Override
+    public long estimateSize() {
+        return remaining;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SORTED | NONNULL | SIZED | SUBSIZED;
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+        // null for natural ordering
+        return comparator;
+    }
+}
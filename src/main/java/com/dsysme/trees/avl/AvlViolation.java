@@ -0,0 +1,61 @@
+package com.dsysme.trees.avl;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * First broken invariant found by {@link AvlTree#validate()}.
+ */
+public class AvlViolation<T extends Comparable> {
+
+    public enum Type {
+        // a value is out of the range its ancestors allow
+        ORDER,
+        // a child does not point back to its parent, or the root has a parent
+        PARENT_LINK,
+        HEIGHT,
+        SIZE,
+        // children heights differ by more than one
+        BALANCE,
+        // the values counted by the reachable nodes differ from the size of the tree
+        TREE_SIZE
+    }
+
+    private final Type type;
+    private final List<Node<T>> path;
+    private final String message;
+
+    AvlViolation(Type type, List<Node<T>> path, String message) {
+        this.type = type;
+        this.path = path;
+        this.message = message;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the offending node, null for a violation of the whole tree
+     */
+    public Node<T> getNode() {
+        return path.isEmpty() ? null : path.get(path.size() - 1);
+    }
+
+    /**
+     * @return nodes from the root down to the offending node
+     */
+    public List<Node<T>> getPath() {
+        return path;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return type + " at [" + path.stream().map(node -> String.valueOf(node.getValue())).collect(Collectors.joining(" -> "))
+                + "]: " + message;
+    }
+}
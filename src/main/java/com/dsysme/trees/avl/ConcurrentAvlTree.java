@@ -0,0 +1,371 @@
+package com.dsysme.trees.avl;
+
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread safe AVL set with lock free reads, after the optimistic validation scheme of
+ * Bronson, Casper, Chafi and Olukotun, "A Practical Concurrent Binary Search Tree".
+ *
+ * Every node carries a version that is odd while a writer relinks the node and is bumped when it is done.
+ * A reader reads a node version, then the child link, then the child version and finally checks the parent
+ * version again, so each step it takes was a valid edge at some instant. A rotation or removal changes the
+ * version of every node whose children change, and a removal that moves up the successor also that of every
+ * node on the way down to it, any reader depending on the old links notices and restarts.
+ * Removed nodes keep a permanent unlinked version.
+ *
+ * Writers are serialized by a single lock and only the nodes they relink are made unstable for readers,
+ * which suits one or few writing threads next to many readers. Equal values are not duplicated.
+ */
+public class ConcurrentAvlTree<T extends Comparable> {
+
+    private static final long UNLINKED = -2;
+
+    private static final class ConcurrentNode<T> {
+        final T value;
+        volatile ConcurrentNode<T> left;
+        volatile ConcurrentNode<T> right;
+        volatile long version;
+        // only accessed by the writer holding the lock
+        ConcurrentNode<T> parent;
+        int height;
+
+        ConcurrentNode(T value, ConcurrentNode<T> parent) {
+            this.value = value;
+            this.parent = parent;
+        }
+    }
+
+    // the root hangs on the right of the holder, so replacing the root is an ordinary relink
+    private final ConcurrentNode<T> holder = new ConcurrentNode<>(null, null);
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return holder.right == null;
+    }
+
+    public boolean contains(T value) {
+        return search(value, Direction.EXACT) != null;
+    }
+
+    /**
+     * Weakly consistent: the returned value was in the tree and was the floor at some instant during the call.
+     * @return the greatest value less than or equal to the given one
+     */
+    public Optional<T> floor(T value) {
+        return Optional.ofNullable(search(value, Direction.FLOOR));
+    }
+
+    /**
+     * Weakly consistent like {@link #floor(Comparable)}.
+     * @return the least value greater than or equal to the given one
+     */
+    public Optional<T> ceiling(T value) {
+        return Optional.ofNullable(search(value, Direction.CEILING));
+    }
+
+    private enum Direction {
+        EXACT,
+        FLOOR,
+        CEILING
+    }
+
+    private T search(T value, Direction direction) {
+        retry:
+        while (true) {
+            ConcurrentNode<T> node = holder;
+            long version = stableVersion(node);
+            ConcurrentNode<T> child = node.right;
+            T candidate = null;
+            while (true) {
+                if (child == null) {
+                    if (node.version != version) {
+                        continue retry;
+                    }
+                    return candidate;
+                }
+                long childVersion = stableVersion(child);
+                if (node.version != version) {
+                    // the edge from node to child may no longer exist
+                    continue retry;
+                }
+                // child was linked under a node that was in the tree, the edge is valid
+                int comparison = value.compareTo(child.value);
+                if (comparison == 0) {
+                    return child.value;
+                }
+                if (comparison > 0 && direction == Direction.FLOOR || comparison < 0 && direction == Direction.CEILING) {
+                    candidate = child.value;
+                }
+                node = child;
+                version = childVersion;
+                child = comparison < 0 ? node.left : node.right;
+            }
+        }
+    }
+
+    /**
+     * Waits out a writer relinking the node.
+     * @return an even version, or {@link #UNLINKED} which never validates against the node again
+     */
+    private static long stableVersion(ConcurrentNode<?> node) {
+        long version = node.version;
+        while ((version & 1) != 0) {
+            Thread.yield();
+            version = node.version;
+        }
+        return version;
+    }
+
+    /**
+     * @return false if an equal value is already in the tree
+     */
+    public boolean insert(T value) {
+        writeLock.lock();
+        try {
+            ConcurrentNode<T> parent = holder;
+            ConcurrentNode<T> current = holder.right;
+            int comparison = 1;
+            while (current != null) {
+                comparison = value.compareTo(current.value);
+                if (comparison == 0) {
+                    return false;
+                }
+                parent = current;
+                current = comparison < 0 ? current.left : current.right;
+            }
+            ConcurrentNode<T> node = new ConcurrentNode<>(value, parent);
+            beginChange(parent);
+            if (comparison < 0) {
+                parent.left = node;
+            } else {
+                parent.right = node;
+            }
+            endChange(parent);
+            size++;
+            retrace(parent);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public boolean remove(T value) {
+        writeLock.lock();
+        try {
+            ConcurrentNode<T> node = holder.right;
+            while (node != null) {
+                int comparison = value.compareTo(node.value);
+                if (comparison == 0) {
+                    break;
+                }
+                node = comparison < 0 ? node.left : node.right;
+            }
+            if (node == null) {
+                return false;
+            }
+            removeNode(node);
+            size--;
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void removeNode(ConcurrentNode<T> node) {
+        ConcurrentNode<T> parent = node.parent;
+        ConcurrentNode<T> retraceFrom;
+        beginChange(parent);
+        beginChange(node);
+        if (node.left != null && node.right != null) {
+            ConcurrentNode<T> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            ConcurrentNode<T> successorParent = successor.parent;
+            ConcurrentNode<T> right = node.right;
+            // a reader anywhere on the way down to the successor could reach the spot it leaves and miss it,
+            // so every node on that path has to fail validation, not only the relinked ones
+            for (ConcurrentNode<T> onPath = right; onPath != successor; onPath = onPath.left) {
+                beginChange(onPath);
+            }
+            beginChange(successor);
+            if (successorParent == node) {
+                retraceFrom = successor;
+            } else {
+                retraceFrom = successorParent;
+                ConcurrentNode<T> successorRight = successor.right;
+                successorParent.left = successorRight;
+                if (successorRight != null) {
+                    successorRight.parent = successorParent;
+                }
+                successor.right = right;
+                right.parent = successor;
+            }
+            successor.left = node.left;
+            node.left.parent = successor;
+            replaceChild(parent, node, successor);
+            successor.height = node.height;
+            endChange(successor);
+            if (successorParent != node) {
+                // only the last left link of the path changed, it still leads to the successor parent
+                for (ConcurrentNode<T> onPath = right; ; onPath = onPath.left) {
+                    endChange(onPath);
+                    if (onPath == successorParent) {
+                        break;
+                    }
+                }
+            }
+        } else {
+            retraceFrom = parent;
+            replaceChild(parent, node, node.left != null ? node.left : node.right);
+        }
+        node.version = UNLINKED;
+        endChange(parent);
+        retrace(retraceFrom);
+    }
+
+    private static void beginChange(ConcurrentNode<?> node) {
+        node.version++;
+    }
+
+    private static void endChange(ConcurrentNode<?> node) {
+        node.version++;
+    }
+
+    private static <T> void replaceChild(ConcurrentNode<T> parent, ConcurrentNode<T> child, ConcurrentNode<T> replacement) {
+        if (parent.left == child) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+        if (replacement != null) {
+            replacement.parent = parent;
+        }
+    }
+
+    private static int height(ConcurrentNode<?> node) {
+        return node == null ? -1 : node.height;
+    }
+
+    private static void update(ConcurrentNode<?> node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+    }
+
+    private static int balanceFactor(ConcurrentNode<?> node) {
+        return height(node.left) - height(node.right);
+    }
+
+    private void retrace(ConcurrentNode<T> from) {
+        ConcurrentNode<T> current = from;
+        while (current != holder) {
+            int previousHeight = current.height;
+            update(current);
+            int balance = balanceFactor(current);
+            if (balance > 1) {
+                if (balanceFactor(current.left) < 0) {
+                    rotateLeft(current.left);
+                }
+                current = rotateRight(current);
+            } else if (balance < -1) {
+                if (balanceFactor(current.right) > 0) {
+                    rotateRight(current.right);
+                }
+                current = rotateLeft(current);
+            }
+            if (current.height == previousHeight) {
+                return;
+            }
+            current = current.parent;
+        }
+    }
+
+    /**
+     * Same shape as {@link AvlTree#rotateRight(Node)}, the parent, nodeC and nodeB are unstable meanwhile.
+     */
+    private ConcurrentNode<T> rotateRight(ConcurrentNode<T> nodeC) {
+        ConcurrentNode<T> parent = nodeC.parent;
+        ConcurrentNode<T> nodeB = nodeC.left;
+        ConcurrentNode<T> inner = nodeB.right;
+        beginChange(parent);
+        beginChange(nodeC);
+        beginChange(nodeB);
+        nodeC.left = inner;
+        if (inner != null) {
+            inner.parent = nodeC;
+        }
+        nodeB.right = nodeC;
+        nodeC.parent = nodeB;
+        replaceChild(parent, nodeC, nodeB);
+        update(nodeC);
+        update(nodeB);
+        endChange(nodeB);
+        endChange(nodeC);
+        endChange(parent);
+        return nodeB;
+    }
+
+    /**
+     * Same shape as {@link AvlTree#rotateLeft(Node)}, the parent, nodeA and nodeB are unstable meanwhile.
+     */
+    private ConcurrentNode<T> rotateLeft(ConcurrentNode<T> nodeA) {
+        ConcurrentNode<T> parent = nodeA.parent;
+        ConcurrentNode<T> nodeB = nodeA.right;
+        ConcurrentNode<T> inner = nodeB.left;
+        beginChange(parent);
+        beginChange(nodeA);
+        beginChange(nodeB);
+        nodeA.right = inner;
+        if (inner != null) {
+            inner.parent = nodeA;
+        }
+        nodeB.left = nodeA;
+        nodeA.parent = nodeB;
+        replaceChild(parent, nodeA, nodeB);
+        update(nodeA);
+        update(nodeB);
+        endChange(nodeB);
+        endChange(nodeA);
+        endChange(parent);
+        return nodeB;
+    }
+
+    /**
+     * Checks ordering, parent links, cached heights and the AVL balance of every node while holding the
+     * write lock, for tests and health checks.
+     */
+    boolean isConsistent() {
+        writeLock.lock();
+        try {
+            return holder.left == null && checkSubtree(holder.right, holder, null, null) >= -1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the height of the subtree, or -2 if something is wrong in it
+     */
+    private int checkSubtree(ConcurrentNode<T> node, ConcurrentNode<T> parent, T low, T high) {
+        if (node == null) {
+            return -1;
+        }
+        if (node.parent != parent || (node.version & 1) != 0 || node.version < 0
+                || low != null && node.value.compareTo(low) <= 0
+                || high != null && node.value.compareTo(high) >= 0) {
+            return -2;
+        }
+        int leftHeight = checkSubtree(node.left, node, low, node.value);
+        int rightHeight = checkSubtree(node.right, node, node.value, high);
+        if (leftHeight < -1 || rightHeight < -1 || Math.abs(leftHeight - rightHeight) > 1
+                || node.height != Math.max(leftHeight, rightHeight) + 1) {
+            return -2;
+        }
+        return node.height;
+    }
+}
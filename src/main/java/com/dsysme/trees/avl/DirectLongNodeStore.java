@@ -0,0 +1,138 @@
+package com.dsysme.trees.avl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Fixed size records in direct buffers, outside the java heap and invisible to the garbage collector.
+ * Record layout: key (8 bytes), left, right, parent, height (4 bytes each).
+ *
+ * A single buffer is limited to 2GB, about 89M records, so the records are spread over chunks of a fixed
+ * number of records and a slot index picks the chunk with its high bits. Only the last chunk can be partial,
+ * it is reallocated while it grows up to the chunk size, after that growing adds chunks and copies nothing.
+ * This allows any slot index up to {@link Integer#MAX_VALUE}.
+ */
+class DirectLongNodeStore implements LongNodeStore {
+
+    private static final int KEY = 0;
+    private static final int LEFT = 8;
+    private static final int RIGHT = 12;
+    private static final int PARENT = 16;
+    private static final int HEIGHT = 20;
+    private static final int RECORD_SIZE = 24;
+    // 24MB per chunk
+    private static final int DEFAULT_CHUNK_RECORDS = 1 << 20;
+
+    private final int chunkShift;
+    private final int chunkMask;
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int capacity;
+
+    DirectLongNodeStore(int capacity) {
+        this(capacity, DEFAULT_CHUNK_RECORDS);
+    }
+
+    /**
+     * @param chunkRecords records per chunk, a power of two
+     */
+    DirectLongNodeStore(int capacity, int chunkRecords) {
+        if (Integer.bitCount(chunkRecords) != 1) {
+            throw new IllegalArgumentException("Chunk size must be a power of two: " + chunkRecords);
+        }
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkRecords);
+        this.chunkMask = chunkRecords - 1;
+        grow(capacity);
+    }
+
+    private static ByteBuffer allocate(int records) {
+        return ByteBuffer.allocateDirect(records * RECORD_SIZE).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void grow(int capacity) {
+        int chunkRecords = chunkMask + 1;
+        while (this.capacity < capacity) {
+            int last = chunks.length - 1;
+            if (last >= 0 && chunks[last].capacity() < chunkRecords * RECORD_SIZE) {
+                int records = (int) Math.min(chunkRecords, capacity - ((long) last << chunkShift));
+                ByteBuffer grown = allocate(records);
+                ByteBuffer source = chunks[last].duplicate();
+                source.clear();
+                grown.put(source);
+                grown.clear();
+                chunks[last] = grown;
+            } else {
+                int records = (int) Math.min(chunkRecords, capacity - ((long) chunks.length << chunkShift));
+                chunks = Arrays.copyOf(chunks, chunks.length + 1);
+                chunks[chunks.length - 1] = allocate(records);
+            }
+            int tail = chunks.length - 1;
+            long records = ((long) tail << chunkShift) + chunks[tail].capacity() / RECORD_SIZE;
+            this.capacity = (int) Math.min(Integer.MAX_VALUE, records);
+        }
+    }
+
+    private ByteBuffer chunk(int node) {
+        return chunks[node >>> chunkShift];
+    }
+
+    private int offset(int node) {
+        return (node & chunkMask) * RECORD_SIZE;
+    }
+
+    @Override
+    public long getKey(int node) {
+        return chunk(node).getLong(offset(node) + KEY);
+    }
+
+    @Override
+    public void setKey(int node, long key) {
+        chunk(node).putLong(offset(node) + KEY, key);
+    }
+
+    @Override
+    public int getLeft(int node) {
+        return chunk(node).getInt(offset(node) + LEFT);
+    }
+
+    @Override
+    public void setLeft(int node, int left) {
+        chunk(node).putInt(offset(node) + LEFT, left);
+    }
+
+    @Override
+    public int getRight(int node) {
+        return chunk(node).getInt(offset(node) + RIGHT);
+    }
+
+    @Override
+    public void setRight(int node, int right) {
+        chunk(node).putInt(offset(node) + RIGHT, right);
+    }
+
+    @Override
+    public int getParent(int node) {
+        return chunk(node).getInt(offset(node) + PARENT);
+    }
+
+    @Override
+    public void setParent(int node, int parent) {
+        chunk(node).putInt(offset(node) + PARENT, parent);
+    }
+
+    @Override
+    public int getHeight(int node) {
+        return chunk(node).getInt(offset(node) + HEIGHT);
+    }
+
+    @Override
+    public void setHeight(int node, int height) {
+        chunk(node).putInt(offset(node) + HEIGHT, height);
+    }
+}
@@ -0,0 +1,248 @@
+package com.dsysme.trees.avl;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Immutable copy of an {@link AvlTree} in Eytzinger order: the values fill one array breadth first as a
+ * complete binary search tree, the children of slot k are the slots 2k and 2k + 1 and slot 0 is unused.
+ * A search only does index arithmetic over one array, the first levels of every descent share the same few
+ * cache lines and the slots of the next levels are adjacent, instead of following references to nodes spread
+ * over the heap. The descent picks the child from the sign bit of the comparison, without a branch.
+ * Built by {@link AvlTree#freeze()}.
+ */
+public class FrozenAvlTree<T extends Comparable> implements Iterable<T> {
+
+    private final Comparator<? super T> comparator;
+    private final Object[] values;
+    private final int size;
+
+    FrozenAvlTree(AvlTree<T> tree) {
+        this.comparator = tree.comparator();
+        this.size = tree.size();
+        this.values = new Object[size + 1];
+        Iterator<T> inOrder = tree.iterator();
+        fill(1, inOrder);
+    }
+
+    /**
+     * An in order walk over the implicit tree meets the slots in ascending order.
+     */
+    private void fill(int slot, Iterator<T> inOrder) {
+        if (slot > size) {
+            return;
+        }
+        fill(2 * slot, inOrder);
+        values[slot] = inOrder.next();
+        fill(2 * slot + 1, inOrder);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T at(int slot) {
+        return (T) values[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(T first, T second) {
+        return comparator == null ? first.compareTo(second) : comparator.compare(first, second);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the comparator ordering the values, null for natural ordering
+     */
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    /**
+     * @return slot of the least value greater than or equal to the given one, 0 if there is none
+     */
+    private int lowerBound(T value) {
+        int slot = 1;
+        while (slot <= size) {
+            // go right exactly when the slot is less than the value, the sign bit of the comparison
+            slot = 2 * slot + (compare(at(slot), value) >>> 31);
+        }
+        return lastLeftTurn(slot);
+    }
+
+    /**
+     * @return slot of the least value strictly greater than the given one, 0 if there is none
+     */
+    private int upperBound(T value) {
+        int slot = 1;
+        while (slot <= size) {
+            // go right exactly when the value is not less than the slot
+            slot = 2 * slot + (~compare(value, at(slot)) >>> 31);
+        }
+        return lastLeftTurn(slot);
+    }
+
+    /**
+     * Past a leaf the slot number spells the turns taken in binary, 1 for right. The answer is where the
+     * descent last turned left, found by dropping the trailing right turns and that left turn.
+     */
+    private static int lastLeftTurn(int slot) {
+        return slot >>> (Integer.numberOfTrailingZeros(~slot) + 1);
+    }
+
+    private int successor(int slot) {
+        if (2 * slot + 1 <= size) {
+            int current = 2 * slot + 1;
+            while (2 * current <= size) {
+                current = 2 * current;
+            }
+            return current;
+        }
+        return lastLeftTurn(slot);
+    }
+
+    private int predecessor(int slot) {
+        if (2 * slot <= size) {
+            int current = 2 * slot;
+            while (2 * current + 1 <= size) {
+                current = 2 * current + 1;
+            }
+            return current;
+        }
+        // drop the trailing left turns and the right turn before them
+        return slot >>> (Integer.numberOfTrailingZeros(slot) + 1);
+    }
+
+    private int firstSlot() {
+        int slot = size == 0 ? 0 : 1;
+        while (slot != 0 && 2 * slot <= size) {
+            slot = 2 * slot;
+        }
+        return slot;
+    }
+
+    private int lastSlot() {
+        int slot = size == 0 ? 0 : 1;
+        while (slot != 0 && 2 * slot + 1 <= size) {
+            slot = 2 * slot + 1;
+        }
+        return slot;
+    }
+
+    /**
+     * @return predecessor of the slot, where slot 0 stands for the end
+     */
+    private int before(int slot) {
+        return slot == 0 ? lastSlot() : predecessor(slot);
+    }
+
+    private Optional<T> value(int slot) {
+        return slot == 0 ? Optional.empty() : Optional.of(at(slot));
+    }
+
+    public boolean contains(T value) {
+        int slot = lowerBound(value);
+        return slot != 0 && compare(at(slot), value) == 0;
+    }
+
+    /**
+     * @return the greatest value less than or equal to the given one
+     */
+    public Optional<T> floor(T value) {
+        return value(before(upperBound(value)));
+    }
+
+    /**
+     * @return the greatest value strictly less than the given one
+     */
+    public Optional<T> lower(T value) {
+        return value(before(lowerBound(value)));
+    }
+
+    /**
+     * @return the least value greater than or equal to the given one
+     */
+    public Optional<T> ceiling(T value) {
+        return value(lowerBound(value));
+    }
+
+    /**
+     * @return the least value strictly greater than the given one
+     */
+    public Optional<T> higher(T value) {
+        return value(upperBound(value));
+    }
+
+    public Optional<T> first() {
+        return value(firstSlot());
+    }
+
+    public Optional<T> last() {
+        return value(lastSlot());
+    }
+
+    /**
+     * Calls the action for the values v with low <= v <= high in order.
+     */
+    public void forEachInRange(T low, T high, Consumer<? super T> action) {
+        for (int slot = lowerBound(low); slot != 0 && compare(at(slot), high) <= 0; slot = successor(slot)) {
+            action.accept(at(slot));
+        }
+    }
+
+    /**
+     * @return the values v with low <= v <= high, lazily in order
+     */
+    public Stream<T> range(T low, T high) {
+        Iterator<T> iterator = new SlotIterator(lowerBound(low), high);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new SlotIterator(firstSlot(), null);
+    }
+
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(iterator(), size,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    private class SlotIterator implements Iterator<T> {
+        // null for no upper bound
+        private final T high;
+        private int next;
+
+        SlotIterator(int first, T high) {
+            this.high = high;
+            this.next = first;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != 0 && (high == null || compare(at(next), high) <= 0);
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T value = at(next);
+            next = successor(next);
+            return value;
+        }
+    }
+}
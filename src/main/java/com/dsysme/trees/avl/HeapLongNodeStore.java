@@ -0,0 +1,87 @@
+package com.dsysme.trees.avl;
+
+import java.util.Arrays;
+
+/**
+ * Struct of arrays, one primitive array per field.
+ */
+class HeapLongNodeStore implements LongNodeStore {
+
+    private long[] keys;
+    private int[] lefts;
+    private int[] rights;
+    private int[] parents;
+    private int[] heights;
+
+    HeapLongNodeStore(int capacity) {
+        keys = new long[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        parents = new int[capacity];
+        heights = new int[capacity];
+    }
+
+    @Override
+    public int capacity() {
+        return keys.length;
+    }
+
+    @Override
+    public void grow(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+    }
+
+    @Override
+    public long getKey(int node) {
+        return keys[node];
+    }
+
+    @Override
+    public void setKey(int node, long key) {
+        keys[node] = key;
+    }
+
+    @Override
+    public int getLeft(int node) {
+        return lefts[node];
+    }
+
+    @Override
+    public void setLeft(int node, int left) {
+        lefts[node] = left;
+    }
+
+    @Override
+    public int getRight(int node) {
+        return rights[node];
+    }
+
+    @Override
+    public void setRight(int node, int right) {
+        rights[node] = right;
+    }
+
+    @Override
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    @Override
+    public void setParent(int node, int parent) {
+        parents[node] = parent;
+    }
+
+    @Override
+    public int getHeight(int node) {
+        return heights[node];
+    }
+
+    @Override
+    public void setHeight(int node, int height) {
+        heights[node] = height;
+    }
+}
@@ -0,0 +1,334 @@
+package com.dsysme.trees.avl;
+
+/**
+ * {@link AvlTree} specialized for int values, see {@link IntNode}.
+ * Lookups return null where {@link AvlTree} returns an empty Optional.
+ */
+public class IntAvlTree {
+
+    private IntNode root;
+
+    public IntAvlTree() {
+        this.root = null;
+    }
+
+    public IntAvlTree(IntNode root) {
+        this.root = root;
+    }
+
+    public IntNode getRoot() {
+        return root;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public IntNode insert(int value) {
+        IntNode node = new IntNode(value);
+        insertNode(node);
+        return node;
+    }
+
+    public void insertNode(IntNode node) {
+        if (!node.isLeaf() || !node.isRoot() || node == root) {
+            throw new IllegalArgumentException("Can only add detached leaf that is not this.root");
+        }
+
+        node.update();
+        if (root == null) {
+            this.root = node;
+            return;
+        }
+        IntNode current = root;
+        while (true) {
+            if (node.getValue() < current.getValue()) {
+                if (current.getLeft() == null) {
+                    current.setLeft(node);
+                    break;
+                }
+                current = current.getLeft();
+            } else {
+                if (current.getRight() == null) {
+                    current.setRight(node);
+                    break;
+                }
+                current = current.getRight();
+            }
+        }
+        node.setParent(current);
+        retrace(current);
+    }
+
+    public boolean remove(int value) {
+        IntNode node = find(value);
+        if (node == null) {
+            return false;
+        }
+        removeNode(node);
+        return true;
+    }
+
+    /**
+     * Same contract as {@link AvlTree#removeNode(Node)}.
+     */
+    public void removeNode(IntNode node) {
+        if (!isMyNode(node)) {
+            throw new IllegalArgumentException("Can only remove a node of this tree");
+        }
+
+        IntNode retraceFrom;
+        if (node.getLeft() != null && node.getRight() != null) {
+            IntNode successor = node.getRight();
+            while (successor.getLeft() != null) {
+                successor = successor.getLeft();
+            }
+            if (successor.getParent() == node) {
+                retraceFrom = successor;
+            } else {
+                retraceFrom = successor.getParent();
+                replaceChild(retraceFrom, successor, successor.getRight());
+                successor.setRight(node.getRight());
+                node.getRight().setParent(successor);
+            }
+            successor.setLeft(node.getLeft());
+            node.getLeft().setParent(successor);
+            replace(node, successor);
+            successor.setHeight(node.getHeight());
+        } else {
+            retraceFrom = node.getParent();
+            replace(node, node.getLeft() != null ? node.getLeft() : node.getRight());
+        }
+
+        node.setParent(null);
+        node.setLeft(null);
+        node.setRight(null);
+        node.update();
+        if (retraceFrom != null) {
+            retrace(retraceFrom);
+        }
+    }
+
+    public boolean contains(int value) {
+        return find(value) != null;
+    }
+
+    /**
+     * @return a node holding the value or null
+     */
+    public IntNode find(int value) {
+        IntNode current = root;
+        while (current != null && current.getValue() != value) {
+            current = value < current.getValue() ? current.getLeft() : current.getRight();
+        }
+        return current;
+    }
+
+    /**
+     * @return the node with the greatest value less than or equal to the given one, or null
+     */
+    public IntNode floor(int value) {
+        return below(value, true);
+    }
+
+    /**
+     * @return the node with the greatest value strictly less than the given one, or null
+     */
+    public IntNode lower(int value) {
+        return below(value, false);
+    }
+
+    /**
+     * @return the node with the least value greater than or equal to the given one, or null
+     */
+    public IntNode ceiling(int value) {
+        return above(value, true);
+    }
+
+    /**
+     * @return the node with the least value strictly greater than the given one, or null
+     */
+    public IntNode higher(int value) {
+        return above(value, false);
+    }
+
+    public IntNode first() {
+        IntNode current = root;
+        while (current != null && current.getLeft() != null) {
+            current = current.getLeft();
+        }
+        return current;
+    }
+
+    public IntNode last() {
+        IntNode current = root;
+        while (current != null && current.getRight() != null) {
+            current = current.getRight();
+        }
+        return current;
+    }
+
+    /**
+     * Same as {@link AvlTree#rotateRight(Node)}.
+     */
+    public IntNode rotateRight(IntNode nodeC) {
+        IntNode nodeB = nodeC.getLeft();
+        IntNode parent = nodeC.getParent();
+        if (parent != null) {
+            if (parent.isMyLeftChild(nodeC)) {
+                parent.setLeft(nodeB);
+            } else {
+                parent.setRight(nodeB);
+            }
+        }
+        nodeB.setParent(parent);
+        nodeC.setParent(nodeB);
+        nodeC.setLeft(nodeB.getRight());
+        if (nodeB.getRight() != null) {
+            nodeB.getRight().setParent(nodeC);
+        }
+        nodeB.setRight(nodeC);
+        nodeC.update();
+        nodeB.update();
+        return nodeB;
+    }
+
+    /**
+     * Same as {@link AvlTree#rotateLeft(Node)}.
+     */
+    public IntNode rotateLeft(IntNode nodeA) {
+        IntNode nodeB = nodeA.getRight();
+        IntNode parent = nodeA.getParent();
+        if (parent != null) {
+            if (parent.isMyLeftChild(nodeA)) {
+                parent.setLeft(nodeB);
+            } else {
+                parent.setRight(nodeB);
+            }
+        }
+        nodeB.setParent(parent);
+        nodeA.setParent(nodeB);
+        nodeA.setRight(nodeB.getLeft());
+        if (nodeB.getLeft() != null) {
+            nodeB.getLeft().setParent(nodeA);
+        }
+        nodeB.setLeft(nodeA);
+        nodeA.update();
+        nodeB.update();
+        return nodeB;
+    }
+
+    /**
+     * Same as {@link AvlTree#rotateRightLeft(Node)}.
+     */
+    public IntNode rotateRightLeft(IntNode nodeA) {
+        rotateRight(nodeA.getRight());
+        return rotateLeft(nodeA);
+    }
+
+    /**
+     * Same as {@link AvlTree#rotateLeftRight(Node)}.
+     */
+    public IntNode rotateLeftRight(IntNode nodeC) {
+        rotateLeft(nodeC.getLeft());
+        return rotateRight(nodeC);
+    }
+
+    @Override
+    public String toString() {
+        return root == null ? "" : root.toString();
+    }
+
+    private void retrace(IntNode from) {
+        IntNode current = from;
+        while (current != null) {
+            int previousHeight = current.getHeight();
+            current.update();
+            if (Math.abs(current.getBalanceFactor()) > 1) {
+                boolean wasRoot = current == root;
+                current = rotate(current);
+                if (wasRoot) {
+                    this.root = current;
+                }
+            }
+            if (current.getHeight() == previousHeight) {
+                return;
+            }
+            current = current.getParent();
+        }
+    }
+
+    private IntNode rotate(IntNode unbalancedNode) {
+        if (unbalancedNode.isLeftUnbalanced()) {
+            return unbalancedNode.getLeft().isRightUnbalanced()
+                    ? rotateLeftRight(unbalancedNode) : rotateRight(unbalancedNode);
+        }
+        return unbalancedNode.getRight().isLeftUnbalanced()
+                ? rotateRightLeft(unbalancedNode) : rotateLeft(unbalancedNode);
+    }
+
+    private IntNode below(int value, boolean inclusive) {
+        IntNode candidate = null;
+        IntNode current = root;
+        while (current != null) {
+            if (value == current.getValue() && inclusive) {
+                return current;
+            }
+            if (value > current.getValue()) {
+                candidate = current;
+                current = current.getRight();
+            } else {
+                current = current.getLeft();
+            }
+        }
+        return candidate;
+    }
+
+    private IntNode above(int value, boolean inclusive) {
+        IntNode candidate = null;
+        IntNode current = root;
+        while (current != null) {
+            if (value == current.getValue() && inclusive) {
+                return current;
+            }
+            if (value < current.getValue()) {
+                candidate = current;
+                current = current.getLeft();
+            } else {
+                current = current.getRight();
+            }
+        }
+        return candidate;
+    }
+
+    private boolean isMyNode(IntNode node) {
+        IntNode current = node;
+        while (current.getParent() != null) {
+            current = current.getParent();
+        }
+        return current == root;
+    }
+
+    private void replace(IntNode node, IntNode replacement) {
+        IntNode parent = node.getParent();
+        if (parent != null) {
+            replaceChild(parent, node, replacement);
+        } else {
+            this.root = replacement;
+            if (replacement != null) {
+                replacement.setParent(null);
+            }
+        }
+    }
+
+    private void replaceChild(IntNode parent, IntNode child, IntNode replacement) {
+        if (parent.isMyLeftChild(child)) {
+            parent.setLeft(replacement);
+        } else {
+            parent.setRight(replacement);
+        }
+        if (replacement != null) {
+            replacement.setParent(parent);
+        }
+    }
+}
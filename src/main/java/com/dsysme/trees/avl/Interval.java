@@ -0,0 +1,64 @@
+package com.dsysme.trees.avl;
+
+/**
+ * Closed interval [start, end], ordered by start and then by end.
+ */
+public class Interval<T extends Comparable> implements Comparable<Interval<T>> {
+
+    private final T start;
+    private final T end;
+
+    /**
+     * @throws IllegalArgumentException if end is before start
+     */
+    @SuppressWarnings("unchecked")
+    public Interval(T start, T end) {
+        if (start.compareTo(end) > 0) {
+            throw new IllegalArgumentException("Interval ends before it starts: [" + start + ", " + end + "]");
+        }
+        this.start = start;
+        this.end = end;
+    }
+
+    public T getStart() {
+        return start;
+    }
+
+    public T getEnd() {
+        return end;
+    }
+
+    /**
+     * @return true if this interval shares at least one point with [low, high]
+     */
+    @SuppressWarnings("unchecked")
+    public boolean overlaps(T low, T high) {
+        return start.compareTo(high) <= 0 && end.compareTo(low) >= 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compareTo(Interval<T> other) {
+        int comparison = start.compareTo(other.start);
+        return comparison != 0 ? comparison : end.compareTo(other.end);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Interval)) {
+            return false;
+        }
+        Interval<?> interval = (Interval<?>) other;
+        return start.equals(interval.start) && end.equals(interval.end);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * start.hashCode() + end.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + "]";
+    }
+}
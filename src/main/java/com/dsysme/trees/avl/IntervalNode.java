@@ -0,0 +1,36 @@
+package com.dsysme.trees.avl;
+
+import java.util.Optional;
+
+/**
+ * Node that also caches the greatest end of the intervals in its subtree. The tree refreshes it together with
+ * height and size whenever it relinks the node, rotations included.
+ */
+class IntervalNode<T extends Comparable> extends Node<Interval<T>> {
+
+    private T maxEnd;
+
+    IntervalNode(Interval<T> interval) {
+        super(interval);
+        this.maxEnd = interval.getEnd();
+    }
+
+    T getMaxEnd() {
+        return maxEnd;
+    }
+
+    @Override
+    void update() {
+        super.update();
+        maxEnd = max(max(getValue().getEnd(), getLeft()), getRight());
+    }
+
+    @SuppressWarnings("unchecked")
+    private T max(T value, Optional<Node<Interval<T>>> child) {
+        if (!child.isPresent()) {
+            return value;
+        }
+        T childMax = ((IntervalNode<T>) child.get()).maxEnd;
+        return childMax.compareTo(value) > 0 ? childMax : value;
+    }
+}
@@ -0,0 +1,167 @@
+package com.dsysme.trees.avl;
+
+import java.util.ArrayDeque;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Closed intervals in an {@link AvlTree} ordered by start, every node caches the greatest end in its subtree.
+ * An overlap query walks the tree in order, skips subtrees whose greatest end is before the query and stops
+ * at the first start after it, so reporting k intervals visits O(log n + k log(n / k)) nodes. Equal intervals
+ * may be added more than once.
+ */
+public class IntervalTree<T extends Comparable> implements Iterable<Interval<T>> {
+
+    private final AvlTree<Interval<T>> tree = new AvlTree<>();
+
+    public int size() {
+        return tree.size();
+    }
+
+    public boolean isEmpty() {
+        return tree.isEmpty();
+    }
+
+    public void add(T start, T end) {
+        add(new Interval<>(start, end));
+    }
+
+    public void add(Interval<T> interval) {
+        tree.insertNode(new IntervalNode<>(interval));
+    }
+
+    /**
+     * Removes one interval equal to the given one.
+     * @return true if there was one
+     */
+    public boolean remove(Interval<T> interval) {
+        return tree.remove(interval);
+    }
+
+    public boolean contains(Interval<T> interval) {
+        return tree.contains(interval);
+    }
+
+    /**
+     * Lazily yields the intervals sharing at least one point with [low, high], ordered by start.
+     */
+    public Iterator<Interval<T>> overlappingIterator(T low, T high) {
+        return new OverlapIterator(low, high);
+    }
+
+    public Stream<Interval<T>> overlapping(T low, T high) {
+        Spliterator<Interval<T>> spliterator = Spliterators.spliteratorUnknownSize(overlappingIterator(low, high),
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    public void forEachOverlapping(T low, T high, Consumer<? super Interval<T>> action) {
+        overlappingIterator(low, high).forEachRemaining(action);
+    }
+
+    /**
+     * @return the intervals containing the point
+     */
+    public Stream<Interval<T>> stabbing(T point) {
+        return overlapping(point, point);
+    }
+
+    public void forEachStabbing(T point, Consumer<? super Interval<T>> action) {
+        forEachOverlapping(point, point, action);
+    }
+
+    @Override
+    public Iterator<Interval<T>> iterator() {
+        return tree.iterator();
+    }
+
+    public Stream<Interval<T>> stream() {
+        return tree.stream();
+    }
+
+    /**
+     * @see AvlTree#validate()
+     */
+    public Optional<AvlViolation<Interval<T>>> validate() {
+        return tree.validate();
+    }
+
+    @Override
+    public String toString() {
+        return tree.toString();
+    }
+
+    /**
+     * In order traversal over an explicit stack holding the pending ancestors, pruned by the cached maximum ends.
+     */
+    private class OverlapIterator implements Iterator<Interval<T>> {
+        private final T low;
+        private final T high;
+        private final ArrayDeque<IntervalNode<T>> stack = new ArrayDeque<>();
+        private final int expectedModCount = tree.getModCount();
+        private Interval<T> next;
+
+        OverlapIterator(T low, T high) {
+            this.low = low;
+            this.high = high;
+            pushLeft(tree.getRoot());
+            advance();
+        }
+
+        /**
+         * Pushes the node and its chain of left children as long as their subtrees can reach the query.
+         */
+        @SuppressWarnings("unchecked")
+        private void pushLeft(Node<Interval<T>> node) {
+            IntervalNode<T> current = (IntervalNode<T>) node;
+            while (current != null && current.getMaxEnd().compareTo(low) >= 0) {
+                stack.push(current);
+                current = (IntervalNode<T>) current.getLeft().orElse(null);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (!stack.isEmpty()) {
+                IntervalNode<T> node = stack.pop();
+                Interval<T> interval = node.getValue();
+                if (interval.getStart().compareTo(high) > 0) {
+                    // every later interval starts after the query too
+                    stack.clear();
+                    return;
+                }
+                pushLeft(node.getRight().orElse(null));
+                if (interval.getEnd().compareTo(low) >= 0) {
+                    next = interval;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Interval<T> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            if (tree.getModCount() != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            Interval<T> result = next;
+            advance();
+            return result;
+        }
+    }
+}
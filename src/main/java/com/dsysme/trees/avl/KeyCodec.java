@@ -0,0 +1,58 @@
+package com.dsysme.trees.avl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes values as fixed width records for {@link AvlTreeSnapshot}.
+ */
+public interface KeyCodec<T> {
+
+    KeyCodec<Integer> INTEGER = new KeyCodec<Integer>() {
+        @Override
+        public int width() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, Integer value) {
+            buffer.putInt(value);
+        }
+
+        @Override
+        public Integer read(ByteBuffer buffer, int offset) {
+            return buffer.getInt(offset);
+        }
+    };
+
+    KeyCodec<Long> LONG = new KeyCodec<Long>() {
+        @Override
+        public int width() {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, Long value) {
+            buffer.putLong(value);
+        }
+
+        @Override
+        public Long read(ByteBuffer buffer, int offset) {
+            return buffer.getLong(offset);
+        }
+    };
+
+    /**
+     * @return bytes per value, the same for every value
+     */
+    int width();
+
+    /**
+     * Puts exactly {@link #width()} bytes at the position of the buffer.
+     */
+    void write(ByteBuffer buffer, T value);
+
+    /**
+     * Reads the value at the absolute offset without moving the position of the buffer.
+     */
+    T read(ByteBuffer buffer, int offset);
+}
@@ -0,0 +1,127 @@
+package com.dsysme.trees.avl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * {@link Node} specialized for long values: the value is not boxed and missing links are plain nulls
+ * instead of {@link java.util.Optional}, so relinking allocates nothing.
+ */
+public class LongNode {
+
+    private long value;
+    private LongNode parent;
+    private LongNode left;
+    private LongNode right;
+    private int height;
+
+    public LongNode(long value) {
+        this.value = value;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public void setValue(long value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the parent or null for a root
+     */
+    public LongNode getParent() {
+        return parent;
+    }
+
+    public void setParent(LongNode parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * @return the left child or null
+     */
+    public LongNode getLeft() {
+        return left;
+    }
+
+    public void setLeft(LongNode left) {
+        this.left = left;
+    }
+
+    /**
+     * @return the right child or null
+     */
+    public LongNode getRight() {
+        return right;
+    }
+
+    public void setRight(LongNode right) {
+        this.right = right;
+    }
+
+    /**
+     * Same contract as {@link Node#getHeight()}.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    void setHeight(int height) {
+        this.height = height;
+    }
+
+    void update() {
+        int leftHeight = left != null ? left.height : -1;
+        int rightHeight = right != null ? right.height : -1;
+        height = Math.max(leftHeight, rightHeight) + 1;
+    }
+
+    int getBalanceFactor() {
+        return getLeftWeight() - getRightWeight();
+    }
+
+    public boolean isRoot() {
+        return parent == null;
+    }
+
+    public boolean isLeaf() {
+        return left == null && right == null;
+    }
+
+    public boolean isMyLeftChild(LongNode node) {
+        return left != null && left == node;
+    }
+
+    public boolean isMyRightChild(LongNode node) {
+        return right != null && right == node;
+    }
+
+    public int getLeftWeight() {
+        return left == null ? 0 : left.height + 1;
+    }
+
+    public int getRightWeight() {
+        return right == null ? 0 : right.height + 1;
+    }
+
+    public boolean isLeftUnbalanced() {
+        return getLeftWeight() > getRightWeight();
+    }
+
+    public boolean isRightUnbalanced() {
+        return getRightWeight() > getLeftWeight();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            AvlTree.writeSubtree(this, node -> node.left, node -> node.right, node -> node.value, builder,
+                    Integer.MAX_VALUE, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,37 @@
+package com.dsysme.trees.avl;
+
+/**
+ * Node records of an {@link ArrayLongAvlTree} addressed by slot index, links are slot indices with {@link #NIL}
+ * for a missing node.
+ */
+interface LongNodeStore {
+
+    int NIL = -1;
+
+    int capacity();
+
+    /**
+     * Enlarges the store keeping the existing records.
+     */
+    void grow(int capacity);
+
+    long getKey(int node);
+
+    void setKey(int node, long key);
+
+    int getLeft(int node);
+
+    void setLeft(int node, int left);
+
+    int getRight(int node);
+
+    void setRight(int node, int right);
+
+    int getParent(int node);
+
+    void setParent(int node, int parent);
+
+    int getHeight(int node);
+
+    void setHeight(int node, int height);
+}
@@ -1,5 +1,7 @@
 package com.dsysme.trees.avl;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Optional;
 
@@ -9,6 +11,11 @@ public class Node<T extends Comparable> {
     private Optional<Node<T>> parent;
     private Optional<Node<T>> left;
     private Optional<Node<T>> right;
+    private int height;
+    private int size = 1;
+    private int count = 1;
+    // shared by every link to this node, relinking does not allocate
+    private final Optional<Node<T>> self = Optional.of(this);
 
     public Node(T value) {
         this.value = value;
@@ -17,6 +24,10 @@ public class Node<T extends Comparable> {
         this.parent = Optional.empty();
     }
 
+    Optional<Node<T>> asOptional() {
+        return self;
+    }
+
     public T getValue() {
         return value;
     }
@@ -49,6 +60,57 @@ public class Node<T extends Comparable> {
         this.right = right;
     }
 
+    /**
+     * Cached length of the longest path from this node down to a leaf (a leaf has height 0).
+     * The setters do not touch it, whoever relinks children is expected to call {@link #update()}
+     * bottom up.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Cached number of values in the subtree rooted here, the sum of the counts, maintained like the height.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Occurrences of the value held by this node, more than one only in a multiset tree.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Ancestors need {@link #update()} afterwards like after a relink.
+     */
+    void setCount(int count) {
+        this.count = count;
+    }
+
+    int getLeftSize() {
+        return left.isPresent() ? left.get().size : 0;
+    }
+
+    /**
+     * Recomputes the cached height and size from the (already up to date) children.
+     */
+    void update() {
+        int leftHeight = left.isPresent() ? left.get().height : -1;
+        int rightHeight = right.isPresent() ? right.get().height : -1;
+        height = Math.max(leftHeight, rightHeight) + 1;
+        size = getLeftSize() + (right.isPresent() ? right.get().size : 0) + count;
+    }
+
+    /**
+     * @return left weight minus right weight, AVL allows -1, 0 and 1
+     */
+    int getBalanceFactor() {
+        return getLeftWeight() - getRightWeight();
+    }
+
     public boolean isRoot() {
         return !parent.isPresent();
     }
@@ -58,10 +120,7 @@ public class Node<T extends Comparable> {
     }
 
     public AvlBalanceDetails<T> getBalanceDetails() {
-        int longestPathLeft =  getLeft().isPresent() ? getLeft().get().getLengthLongestPath() + 1: 0;
-        int longestPathRight = getRight().isPresent() ? getRight().get().getLengthLongestPath() + 1: 0;
-
-        return new AvlBalanceDetails<T>(this, longestPathLeft, longestPathRight);
+        return new AvlBalanceDetails<T>(this, getLeftWeight(), getRightWeight());
     }
 
     public boolean isMyLeftChild(Node<T> node) {
@@ -76,14 +135,14 @@ public class Node<T extends Comparable> {
         if (!getLeft().isPresent()) {
             return 0;
         }
-        return getLeft().get().getWeight() + 1;
+        return getLeft().get().height + 1;
     }
 
     public int getRightWeight() {
         if (!getRight().isPresent()) {
             return 0;
         }
-        return getRight().get().getWeight() + 1;
+        return getRight().get().height + 1;
     }
 
     public boolean isLeftUnbalanced() {
@@ -95,24 +154,24 @@ public class Node<T extends Comparable> {
     }
 
     public int getWeight() {
-        return Math.max(getLeftWeight(), getRightWeight());
+        return height;
     }
 
     public int getLengthLongestPath() {
-        if (isLeaf()) {
-            return 0;
-        }
-        if (left.isPresent()) {
-            return right.isPresent()
-                    ? Math.max(left.get().getLengthLongestPath() + 1, right.get().getLengthLongestPath() + 1) : left.get().getLengthLongestPath() + 1;
-        }
-        return right.get().getLengthLongestPath() + 1;
+        return height;
     }
 
+    /**
+     * The subtree rooted here in order, each subtree in brackets: "[ A ] B [ C ]".
+     */
     @Override
     public String toString() {
-        return String.format("%s %s %s"
-                , getLeft().isPresent() ? "[" + getLeft().get() + "]" : ""
-                , getValue(), getRight().isPresent() ? "[" + getRight().get() + "]": "");
+        StringBuilder builder = new StringBuilder();
+        try {
+            AvlTree.writeSubtree(this, builder, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
     }
 }
@@ -0,0 +1,222 @@
+package com.dsysme.trees.avl;
+
+import java.util.Optional;
+
+/**
+ * Immutable AVL tree. Insert and remove return a new version that copies only the O(log n) nodes on the
+ * path to the change and shares every other subtree with this one, so holding on to a version is an O(1)
+ * consistent snapshot. Equal values go to the right, as in {@link AvlTree}.
+ */
+public final class PersistentAvlTree<T extends Comparable> {
+
+    private static final PersistentAvlTree<?> EMPTY = new PersistentAvlTree<>(null);
+
+    private final PersistentNode<T> root;
+
+    private PersistentAvlTree(PersistentNode<T> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends Comparable> PersistentAvlTree<T> empty() {
+        return (PersistentAvlTree<T>) EMPTY;
+    }
+
+    public Optional<PersistentNode<T>> getRoot() {
+        return Optional.ofNullable(root);
+    }
+
+    public int size() {
+        return PersistentNode.size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public PersistentAvlTree<T> insert(T value) {
+        return new PersistentAvlTree<>(insert(root, value));
+    }
+
+    /**
+     * Removes one occurrence of the value.
+     * @return the new version, or this one if the value is not in the tree
+     */
+    public PersistentAvlTree<T> remove(T value) {
+        PersistentNode<T> newRoot = remove(root, value);
+        return newRoot == root ? this : new PersistentAvlTree<>(newRoot);
+    }
+
+    public boolean contains(T value) {
+        PersistentNode<T> current = root;
+        while (current != null) {
+            int comparison = value.compareTo(current.value);
+            if (comparison == 0) {
+                return true;
+            }
+            current = comparison < 0 ? current.left : current.right;
+        }
+        return false;
+    }
+
+    /**
+     * @return the greatest value less than or equal to the given one
+     */
+    public Optional<T> floor(T value) {
+        return Optional.ofNullable(below(value, true));
+    }
+
+    /**
+     * @return the greatest value strictly less than the given one
+     */
+    public Optional<T> lower(T value) {
+        return Optional.ofNullable(below(value, false));
+    }
+
+    /**
+     * @return the least value greater than or equal to the given one
+     */
+    public Optional<T> ceiling(T value) {
+        return Optional.ofNullable(above(value, true));
+    }
+
+    /**
+     * @return the least value strictly greater than the given one
+     */
+    public Optional<T> higher(T value) {
+        return Optional.ofNullable(above(value, false));
+    }
+
+    public Optional<T> first() {
+        PersistentNode<T> current = root;
+        while (current != null && current.left != null) {
+            current = current.left;
+        }
+        return current == null ? Optional.empty() : Optional.of(current.value);
+    }
+
+    public Optional<T> last() {
+        PersistentNode<T> current = root;
+        while (current != null && current.right != null) {
+            current = current.right;
+        }
+        return current == null ? Optional.empty() : Optional.of(current.value);
+    }
+
+    @Override
+    public String toString() {
+        return root == null ? "" : root.toString();
+    }
+
+    private T below(T value, boolean inclusive) {
+        T candidate = null;
+        PersistentNode<T> current = root;
+        while (current != null) {
+            int comparison = value.compareTo(current.value);
+            if (comparison == 0 && inclusive) {
+                return current.value;
+            }
+            if (comparison > 0) {
+                candidate = current.value;
+                current = current.right;
+            } else {
+                current = current.left;
+            }
+        }
+        return candidate;
+    }
+
+    private T above(T value, boolean inclusive) {
+        T candidate = null;
+        PersistentNode<T> current = root;
+        while (current != null) {
+            int comparison = value.compareTo(current.value);
+            if (comparison == 0 && inclusive) {
+                return current.value;
+            }
+            if (comparison < 0) {
+                candidate = current.value;
+                current = current.left;
+            } else {
+                current = current.right;
+            }
+        }
+        return candidate;
+    }
+
+    private static <T extends Comparable> PersistentNode<T> insert(PersistentNode<T> node, T value) {
+        if (node == null) {
+            return new PersistentNode<>(value, null, null);
+        }
+        if (value.compareTo(node.value) < 0) {
+            return balance(node.value, insert(node.left, value), node.right);
+        }
+        return balance(node.value, node.left, insert(node.right, value));
+    }
+
+    private static <T extends Comparable> PersistentNode<T> remove(PersistentNode<T> node, T value) {
+        if (node == null) {
+            return null;
+        }
+        int comparison = value.compareTo(node.value);
+        if (comparison < 0) {
+            PersistentNode<T> left = remove(node.left, value);
+            return left == node.left ? node : balance(node.value, left, node.right);
+        }
+        if (comparison > 0) {
+            PersistentNode<T> right = remove(node.right, value);
+            return right == node.right ? node : balance(node.value, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        // replace by the in-order successor
+        PersistentNode<T> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.value, node.left, removeFirst(node.right));
+    }
+
+    private static <T extends Comparable> PersistentNode<T> removeFirst(PersistentNode<T> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.value, removeFirst(node.left), node.right);
+    }
+
+    /**
+     * Creates the node for value over the given subtrees, applying the rotation {@link AvlTree} would
+     * apply if their heights differ by two.
+     */
+    static <T extends Comparable> PersistentNode<T> balance(T value, PersistentNode<T> left, PersistentNode<T> right) {
+        int leftHeight = PersistentNode.height(left);
+        int rightHeight = PersistentNode.height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (PersistentNode.height(left.left) >= PersistentNode.height(left.right)) {
+                // RIGHT
+                return new PersistentNode<>(left.value, left.left, new PersistentNode<>(value, left.right, right));
+            }
+            // LEFT_RIGHT
+            PersistentNode<T> inner = left.right;
+            return new PersistentNode<>(inner.value,
+                    new PersistentNode<>(left.value, left.left, inner.left),
+                    new PersistentNode<>(value, inner.right, right));
+        }
+        if (rightHeight > leftHeight + 1) {
+            if (PersistentNode.height(right.right) >= PersistentNode.height(right.left)) {
+                // LEFT
+                return new PersistentNode<>(right.value, new PersistentNode<>(value, left, right.left), right.right);
+            }
+            // RIGHT_LEFT
+            PersistentNode<T> inner = right.left;
+            return new PersistentNode<>(inner.value,
+                    new PersistentNode<>(value, left, inner.left),
+                    new PersistentNode<>(right.value, inner.right, right.right));
+        }
+        return new PersistentNode<>(value, left, right);
+    }
+}
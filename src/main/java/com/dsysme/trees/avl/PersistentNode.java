@@ -0,0 +1,76 @@
+package com.dsysme.trees.avl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+/**
+ * Immutable node of a {@link PersistentAvlTree}. It has no parent link, so a subtree can be shared by any
+ * number of tree versions.
+ */
+public final class PersistentNode<T extends Comparable> {
+
+    final T value;
+    final PersistentNode<T> left;
+    final PersistentNode<T> right;
+    final int height;
+    final int size;
+
+    PersistentNode(T value, PersistentNode<T> left, PersistentNode<T> right) {
+        this.value = value;
+        this.left = left;
+        this.right = right;
+        this.height = Math.max(height(left), height(right)) + 1;
+        this.size = size(left) + size(right) + 1;
+    }
+
+    static int height(PersistentNode<?> node) {
+        return node == null ? -1 : node.height;
+    }
+
+    static int size(PersistentNode<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public Optional<PersistentNode<T>> getLeft() {
+        return Optional.ofNullable(left);
+    }
+
+    public Optional<PersistentNode<T>> getRight() {
+        return Optional.ofNullable(right);
+    }
+
+    /**
+     * Same contract as {@link Node#getHeight()}.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return number of nodes in this subtree
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isLeaf() {
+        return left == null && right == null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        try {
+            AvlTree.writeSubtree(this, node -> node.left, node -> node.right, node -> node.value, builder,
+                    Integer.MAX_VALUE, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+}
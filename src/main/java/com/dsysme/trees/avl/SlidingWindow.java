@@ -0,0 +1,180 @@
+package com.dsysme.trees.avl;
+
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * The most recent samples in an {@link AvlTree}, for medians and percentiles over a moving window such as the
+ * latencies of the last minutes. Samples leave the window in arrival order once it holds capacity samples and,
+ * for a window with a maximum age, once their timestamp is more than maxAge behind the clock.
+ *
+ * A ring buffer remembers the arrival order and owns one node per slot, an evicted node is unlinked and inserted
+ * again with the new sample, so a full window allocates nothing per sample. Adding expires old samples in
+ * batched sweeps, every maxAge / 16 of clock time, queries sweep first so they only see live samples.
+ * Adding and evicting take O(log n), quantiles O(log n). Not thread safe.
+ */
+public class SlidingWindow<T extends Comparable> {
+
+    private static final int SWEEPS_PER_AGE = 16;
+
+    private final AvlTree<T> tree = new AvlTree<>();
+    private final Node<T>[] ring;
+    private final long[] timestamps;
+    private final long maxAge;
+    // null for a window bounded only by its capacity
+    private final LongSupplier clock;
+    // null to stamp samples with the clock when they are added
+    private final ToLongFunction<? super T> timestampOf;
+    private final long sweepInterval;
+    private long nextSweep = Long.MIN_VALUE;
+    private int head;
+    private int count;
+
+    @SuppressWarnings("unchecked")
+    private SlidingWindow(int capacity, long maxAge, LongSupplier clock, ToLongFunction<? super T> timestampOf) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("Maximum age must not be negative: " + maxAge);
+        }
+        this.ring = new Node[capacity];
+        this.timestamps = new long[capacity];
+        this.maxAge = maxAge;
+        this.clock = clock;
+        this.timestampOf = timestampOf;
+        this.sweepInterval = Math.max(1, maxAge / SWEEPS_PER_AGE);
+    }
+
+    /**
+     * @return a window of the last capacity samples
+     */
+    public static <T extends Comparable> SlidingWindow<T> ofSize(int capacity) {
+        return new SlidingWindow<>(capacity, 0, null, null);
+    }
+
+    /**
+     * @param capacity most samples kept even if they are younger than maxAge
+     * @param maxAge in the unit of the clock
+     * @param clock for example System::currentTimeMillis, samples are stamped with it when added
+     */
+    public static <T extends Comparable> SlidingWindow<T> ofAge(int capacity, long maxAge, LongSupplier clock) {
+        return new SlidingWindow<>(capacity, maxAge, clock, null);
+    }
+
+    /**
+     * Like {@link #ofAge(int, long, LongSupplier)} but the age of a sample comes from a timestamp it carries.
+     * Samples are still evicted in arrival order, a sample arriving late leaves the window with its neighbours.
+     */
+    public static <T extends Comparable> SlidingWindow<T> ofTimestamp(int capacity, long maxAge,
+                                                                      ToLongFunction<? super T> timestampOf,
+                                                                      LongSupplier clock) {
+        return new SlidingWindow<>(capacity, maxAge, clock, timestampOf);
+    }
+
+    public void add(T sample) {
+        long timestamp = 0;
+        if (clock != null) {
+            long now = clock.getAsLong();
+            if (now >= nextSweep) {
+                evictOlderThan(now);
+            }
+            timestamp = timestampOf != null ? timestampOf.applyAsLong(sample) : now;
+        }
+        if (count == ring.length) {
+            evictOldest();
+        }
+        int tail = (head + count) % ring.length;
+        Node<T> node = ring[tail];
+        if (node == null) {
+            node = new Node<>(sample);
+            ring[tail] = node;
+        } else {
+            node.setValue(sample);
+        }
+        timestamps[tail] = timestamp;
+        tree.insertNode(node);
+        count++;
+    }
+
+    /**
+     * Removes the samples older than the maximum age now, a no op for a window bounded only by its capacity.
+     */
+    public void evictExpired() {
+        if (clock != null) {
+            evictOlderThan(clock.getAsLong());
+        }
+    }
+
+    private void evictOlderThan(long now) {
+        long oldestAllowed = now - maxAge;
+        while (count > 0 && timestamps[head] < oldestAllowed) {
+            evictOldest();
+        }
+        nextSweep = now + sweepInterval;
+    }
+
+    private void evictOldest() {
+        // the node stays in its slot for the next sample
+        tree.removeNode(ring[head]);
+        head = (head + 1) % ring.length;
+        count--;
+    }
+
+    public int size() {
+        evictExpired();
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @see AvlTree#quantile(double)
+     * @throws NoSuchElementException if the window is empty
+     */
+    public T quantile(double fraction) {
+        evictExpired();
+        return tree.quantile(fraction);
+    }
+
+    /**
+     * @see AvlTree#percentile(double)
+     */
+    public T percentile(double percent) {
+        evictExpired();
+        return tree.percentile(percent);
+    }
+
+    public T median() {
+        return quantile(0.5);
+    }
+
+    public Optional<T> min() {
+        evictExpired();
+        return tree.first().map(Node::getValue);
+    }
+
+    public Optional<T> max() {
+        evictExpired();
+        return tree.last().map(Node::getValue);
+    }
+
+    /**
+     * @return number of samples in the window strictly less than the given value
+     */
+    public int rank(T value) {
+        evictExpired();
+        return tree.rank(value);
+    }
+
+    /**
+     * @see AvlTree#validate()
+     */
+    public Optional<AvlViolation<T>> validate() {
+        return tree.validate();
+    }
+}
@@ -0,0 +1,90 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+class ArrayLongAvlTreeTest {
+
+    private static void assertSameShapeAsLongAvlTree(ArrayLongAvlTree arrayTree) {
+        Random random = new Random(5);
+        LongAvlTree tree = new LongAvlTree();
+        for (int i = 0; i < 3000; i++) {
+            long value = random.nextInt(1000);
+            if (random.nextInt(3) == 0) {
+                Assertions.assertEquals(tree.remove(value), arrayTree.remove(value));
+            } else {
+                tree.insert(value);
+                arrayTree.insert(value);
+            }
+        }
+        Assertions.assertEquals(tree.toString(), arrayTree.toString());
+        Assertions.assertEquals(tree.getRoot().getHeight(), arrayTree.getHeight(arrayTree.getRoot()));
+    }
+
+    @Test
+    void testSameShapeOnHeap() {
+        assertSameShapeAsLongAvlTree(new ArrayLongAvlTree(4, false));
+    }
+
+    @Test
+    void testSameShapeOffHeap() {
+        assertSameShapeAsLongAvlTree(new ArrayLongAvlTree(4, true));
+    }
+
+    @Test
+    void testSameShapeOffHeapAcrossChunks() {
+        DirectLongNodeStore store = new DirectLongNodeStore(4, 64);
+        assertSameShapeAsLongAvlTree(new ArrayLongAvlTree(store));
+        Assertions.assertTrue(store.capacity() > 64);
+        Assertions.assertEquals(0, store.capacity() % 64);
+    }
+
+    @Test
+    void testToStringOfLargeTree() {
+        Random random = new Random(16);
+        ArrayLongAvlTree arrayTree = new ArrayLongAvlTree();
+        LongAvlTree longTree = new LongAvlTree();
+        AvlTree<Long> tree = new AvlTree<>();
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong();
+            arrayTree.insert(value);
+            longTree.insert(value);
+            tree.insertNode(new Node<>(value));
+        }
+        String expected = tree.toString();
+        Assertions.assertEquals(expected, arrayTree.toString());
+        Assertions.assertEquals(expected, longTree.toString());
+    }
+
+    @Test
+    void testRemovedSlotsAreReused() {
+        ArrayLongAvlTree tree = new ArrayLongAvlTree(8, true);
+        for (long i = 0; i < 8; i++) {
+            tree.insert(i);
+        }
+        int removed = tree.find(3);
+        Assertions.assertTrue(tree.remove(3));
+        Assertions.assertEquals(removed, tree.insert(42));
+        Assertions.assertEquals(8, tree.size());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tree.removeNode(100));
+    }
+
+    @Test
+    void testNavigation() {
+        ArrayLongAvlTree tree = new ArrayLongAvlTree();
+        for (long value : new long[]{10, 6, 16, 11, 14, 3, 20}) {
+            tree.insert(value);
+        }
+        Assertions.assertEquals("[[ 3 ] 6 ] 10 [[ 11 ] 14 [ 16 [ 20 ]]]", tree.toString());
+        Assertions.assertEquals(3, tree.getValue(tree.first()));
+        Assertions.assertEquals(20, tree.getValue(tree.last()));
+        Assertions.assertEquals(11, tree.getValue(tree.floor(12)));
+        Assertions.assertEquals(6, tree.getValue(tree.lower(10)));
+        Assertions.assertEquals(14, tree.getValue(tree.ceiling(12)));
+        Assertions.assertEquals(16, tree.getValue(tree.higher(14)));
+        Assertions.assertEquals(ArrayLongAvlTree.NIL, tree.higher(20));
+        Assertions.assertEquals(ArrayLongAvlTree.NIL, tree.find(7));
+    }
+}
@@ -0,0 +1,122 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+class AvlMapTest {
+
+    private static void assertSameNavigation(NavigableMap<Integer, String> expected, NavigableMap<Integer, String> actual) {
+        Assertions.assertEquals(expected, actual);
+        Assertions.assertEquals(expected.size(), actual.size());
+        Assertions.assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(actual.keySet()));
+        Assertions.assertEquals(new ArrayList<>(expected.descendingKeySet()), new ArrayList<>(actual.descendingKeySet()));
+        Assertions.assertEquals(expected.firstEntry(), actual.firstEntry());
+        Assertions.assertEquals(expected.lastEntry(), actual.lastEntry());
+        for (int key = -5; key <= 105; key++) {
+            Assertions.assertEquals(expected.get(key), actual.get(key));
+            Assertions.assertEquals(expected.lowerEntry(key), actual.lowerEntry(key));
+            Assertions.assertEquals(expected.floorKey(key), actual.floorKey(key));
+            Assertions.assertEquals(expected.ceilingEntry(key), actual.ceilingEntry(key));
+            Assertions.assertEquals(expected.higherKey(key), actual.higherKey(key));
+        }
+    }
+
+    private static void fill(Map<Integer, String> first, Map<Integer, String> second, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < 400; i++) {
+            int key = random.nextInt(100);
+            if (random.nextInt(4) == 0) {
+                Assertions.assertEquals(first.remove(key), second.remove(key));
+            } else {
+                Assertions.assertEquals(first.put(key, "v" + i), second.put(key, "v" + i));
+            }
+        }
+    }
+
+    @Test
+    void testBehavesLikeTreeMap() {
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        AvlMap<Integer, String> actual = new AvlMap<>();
+        fill(expected, actual, 1);
+        assertSameNavigation(expected, actual);
+        assertSameNavigation(expected.descendingMap(), actual.descendingMap());
+    }
+
+    @Test
+    void testComparator() {
+        TreeMap<Integer, String> expected = new TreeMap<>(Comparator.reverseOrder());
+        AvlMap<Integer, String> actual = new AvlMap<>(Comparator.reverseOrder());
+        fill(expected, actual, 2);
+        assertSameNavigation(expected, actual);
+        Assertions.assertEquals(expected.firstKey(), actual.firstKey());
+    }
+
+    @Test
+    void testSubMapViews() {
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        AvlMap<Integer, String> actual = new AvlMap<>();
+        fill(expected, actual, 3);
+        assertSameNavigation(expected.subMap(20, true, 60, false), actual.subMap(20, true, 60, false));
+        assertSameNavigation(expected.headMap(40, true), actual.headMap(40, true));
+        assertSameNavigation(expected.tailMap(40, false), actual.tailMap(40, false));
+        assertSameNavigation(expected.descendingMap().subMap(70, false, 30, true),
+                actual.descendingMap().subMap(70, false, 30, true));
+        assertSameNavigation(expected.tailMap(10, true).headMap(90, false).descendingMap().headMap(50, true),
+                actual.tailMap(10, true).headMap(90, false).descendingMap().headMap(50, true));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> actual.subMap(20, true, 60, false).put(70, "x"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> actual.subMap(60, 20));
+    }
+
+    @Test
+    void testViewsWriteThrough() {
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        AvlMap<Integer, String> actual = new AvlMap<>();
+        fill(expected, actual, 4);
+
+        expected.subMap(30, 50).clear();
+        actual.subMap(30, 50).clear();
+        Assertions.assertEquals(expected.pollFirstEntry(), actual.pollFirstEntry());
+        Assertions.assertEquals(expected.descendingMap().pollFirstEntry(), actual.descendingMap().pollFirstEntry());
+        expected.navigableKeySet().headSet(20).clear();
+        actual.navigableKeySet().headSet(20).clear();
+        expected.tailMap(80).put(85, "x");
+        actual.tailMap(80).put(85, "x");
+
+        Iterator<Map.Entry<Integer, String>> expectedEntries = expected.entrySet().iterator();
+        Iterator<Map.Entry<Integer, String>> actualEntries = actual.entrySet().iterator();
+        while (expectedEntries.hasNext()) {
+            Map.Entry<Integer, String> expectedEntry = expectedEntries.next();
+            Map.Entry<Integer, String> actualEntry = actualEntries.next();
+            if (expectedEntry.getKey() % 2 == 0) {
+                expectedEntries.remove();
+                actualEntries.remove();
+            } else {
+                expectedEntry.setValue("odd");
+                actualEntry.setValue("odd");
+            }
+        }
+        assertSameNavigation(expected, actual);
+        Assertions.assertEquals(expected.hashCode(), actual.hashCode());
+        Assertions.assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    void testEmptyMap() {
+        AvlMap<String, Integer> map = new AvlMap<>();
+        Assertions.assertNull(map.firstEntry());
+        Assertions.assertNull(map.pollLastEntry());
+        Assertions.assertThrows(java.util.NoSuchElementException.class, map::firstKey);
+        Assertions.assertThrows(NullPointerException.class, () -> map.put(null, 1));
+        map.put("a", 1);
+        map.clear();
+        Assertions.assertTrue(map.isEmpty());
+    }
+}
@@ -0,0 +1,201 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+class AvlTreeIngestorTest {
+
+    @Test
+    void testManyProducers() throws Exception {
+        AvlTree<Integer> tree = new AvlTree<>();
+        AvlTreeIngestor<Integer> ingestor = AvlTreeIngestor.start(tree, 256, 64, 1, TimeUnit.MILLISECONDS);
+        int producers = 8;
+        int perProducer = 5000;
+        List<Thread> threads = new ArrayList<>();
+        List<CompletableFuture<Long>> lastWrites = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int first = p;
+            CompletableFuture<Long> lastWrite = new CompletableFuture<>();
+            lastWrites.add(lastWrite);
+            threads.add(new Thread(() -> {
+                try {
+                    CompletableFuture<Long> write = null;
+                    for (int i = 0; i < perProducer; i++) {
+                        write = ingestor.submit(i * producers + first);
+                    }
+                    write.thenAccept(lastWrite::complete);
+                } catch (InterruptedException e) {
+                    lastWrite.completeExceptionally(e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (CompletableFuture<Long> lastWrite : lastWrites) {
+            Assertions.assertTrue(lastWrite.get(10, TimeUnit.SECONDS) <= producers * perProducer);
+        }
+
+        Assertions.assertTrue(ingestor.awaitApplied(producers * perProducer, 10, TimeUnit.SECONDS));
+        Assertions.assertEquals(producers * perProducer, ingestor.read(AvlTree::size).intValue());
+        Assertions.assertFalse(ingestor.read(AvlTree::validate).isPresent());
+        int expected = 0;
+        for (Integer value : tree) {
+            Assertions.assertEquals(expected++, value.intValue());
+        }
+
+        AvlTreeIngestor.Statistics statistics = ingestor.getStatistics();
+        Assertions.assertEquals(producers * perProducer, statistics.getSubmitted());
+        Assertions.assertEquals(producers * perProducer, statistics.getApplied());
+        Assertions.assertEquals(0, statistics.getQueueDepth());
+        Assertions.assertTrue(statistics.getAverageBatchSize() >= 1);
+        Assertions.assertTrue(statistics.getAverageBatchSize() <= 64);
+        ingestor.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> ingestor.submit(1));
+    }
+
+    @Test
+    void testBackpressure() throws Exception {
+        AvlTree<Integer> tree = new AvlTree<>();
+        AvlTreeIngestor<Integer> ingestor = AvlTreeIngestor.start(tree, 4, 4, 0, TimeUnit.MILLISECONDS);
+        // holding the read lock keeps the applier from emptying the buffer
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread reader = new Thread(() -> ingestor.read(t -> {
+            reading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        reader.start();
+        reading.await();
+
+        List<CompletableFuture<Long>> writes = new ArrayList<>();
+        Optional<CompletableFuture<Long>> write;
+        int value = 0;
+        while ((write = ingestor.offer(value)).isPresent()) {
+            writes.add(write.get());
+            value++;
+        }
+        Assertions.assertEquals(4, writes.size());
+        Assertions.assertEquals(4, ingestor.getStatistics().getQueueDepth());
+        Assertions.assertEquals(0, ingestor.getAppliedSequence());
+        Assertions.assertFalse(ingestor.awaitApplied(1, 10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        Assertions.assertEquals(4L, writes.get(3).get(10, TimeUnit.SECONDS).longValue());
+        ingestor.submit(value);
+        ingestor.close();
+        Assertions.assertEquals(5, tree.size());
+        Assertions.assertEquals(5, ingestor.getAppliedSequence());
+    }
+
+    @Test
+    void testFullBatchDoesNotWaitForLatency() throws Exception {
+        AvlTree<Integer> tree = new AvlTree<>();
+        AvlTreeIngestor<Integer> ingestor = AvlTreeIngestor.start(tree, 100, 10, 1, TimeUnit.MINUTES);
+        CompletableFuture<Long> last = null;
+        for (int value = 0; value < 30; value++) {
+            last = ingestor.submit(value);
+            Thread.sleep(1);
+        }
+        // far below the latency, so the batches were applied because they were full
+        Assertions.assertEquals(30L, last.get(10, TimeUnit.SECONDS).longValue());
+        Assertions.assertEquals(3, ingestor.getStatistics().getBatches());
+        Assertions.assertEquals(10, ingestor.getStatistics().getAverageBatchSize());
+        ingestor.close();
+    }
+
+    @Test
+    void testInterruptedClose() throws Exception {
+        AvlTree<Integer> tree = new AvlTree<>();
+        AvlTreeIngestor<Integer> ingestor = AvlTreeIngestor.start(tree, 16, 16, 1, TimeUnit.SECONDS);
+        CompletableFuture<Long> write = ingestor.offer(1).get();
+        Thread.currentThread().interrupt();
+        ingestor.close();
+        // close stopped waiting but kept the interrupt for the caller
+        Assertions.assertTrue(Thread.interrupted());
+        Assertions.assertTrue(ingestor.awaitTermination(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(1L, write.get().longValue());
+        Assertions.assertEquals(1, tree.size());
+    }
+
+    @Test
+    void testFailedBatch() throws Exception {
+        AvlTree<Comparable> tree = new AvlTree<>();
+        AvlTreeIngestor<Comparable> ingestor = AvlTreeIngestor.start(tree, 16, 16, 50, TimeUnit.MILLISECONDS);
+        ingestor.submit(1);
+        ingestor.awaitApplied(1);
+        CompletableFuture<Long> number = ingestor.submit(2);
+        CompletableFuture<Long> text = ingestor.submit("two");
+        ExecutionException failure = Assertions.assertThrows(ExecutionException.class, text::get);
+        Assertions.assertTrue(failure.getCause() instanceof ClassCastException);
+        Assertions.assertTrue(number.isCompletedExceptionally());
+        Assertions.assertEquals(2, ingestor.getStatistics().getFailed());
+
+        // later values are applied but the watermark stays before the failure
+        ingestor.submit(4).get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(1, ingestor.getAppliedSequence());
+        ingestor.awaitApplied(1);
+        IllegalStateException notApplied = Assertions.assertThrows(IllegalStateException.class,
+                () -> ingestor.awaitApplied(4));
+        Assertions.assertTrue(notApplied.getCause() instanceof ClassCastException);
+        Assertions.assertThrows(IllegalStateException.class, () -> ingestor.awaitApplied(2, 1, TimeUnit.SECONDS));
+        ingestor.close();
+        Assertions.assertEquals(2, tree.size());
+    }
+
+    @Test
+    void testSubmitWhileClosing() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            AvlTree<Integer> tree = new AvlTree<>();
+            AvlTreeIngestor<Integer> ingestor = AvlTreeIngestor.start(tree, 64, 8, 0, TimeUnit.MILLISECONDS);
+            List<List<CompletableFuture<Long>>> writes = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < 4; p++) {
+                List<CompletableFuture<Long>> producerWrites = new ArrayList<>();
+                writes.add(producerWrites);
+                threads.add(new Thread(() -> {
+                    try {
+                        for (int value = 0; ; value++) {
+                            ingestor.offer(value).ifPresent(producerWrites::add);
+                        }
+                    } catch (IllegalStateException closed) {
+                        // expected once the ingestor is closed
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            Thread.sleep(5);
+            ingestor.close();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long applied = 0;
+            for (List<CompletableFuture<Long>> producerWrites : writes) {
+                for (CompletableFuture<Long> write : producerWrites) {
+                    try {
+                        write.get(10, TimeUnit.SECONDS);
+                        applied++;
+                    } catch (ExecutionException e) {
+                        Assertions.assertTrue(e.getCause() instanceof IllegalStateException);
+                    }
+                }
+            }
+            Assertions.assertEquals(applied, tree.size());
+            Assertions.assertEquals(0, ingestor.getStatistics().getQueueDepth());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+
+class AvlTreeJoinTest {
+
+    private static AvlTree<Integer> randomTree(Random random, int size, int bound, TreeSet<Integer> expected) {
+        AvlTree<Integer> tree = new AvlTree<>();
+        while (expected.size() < size) {
+            int value = random.nextInt(bound);
+            if (expected.add(value)) {
+                tree.insertNode(new Node<>(value));
+            }
+        }
+        return tree;
+    }
+
+    private static List<Integer> toList(AvlTree<Integer> tree) {
+        List<Integer> values = new ArrayList<>();
+        tree.forEach(values::add);
+        return values;
+    }
+
+    private static void assertValid(AvlTree<Integer> tree, TreeSet<Integer> expected) {
+        Assertions.assertFalse(tree.validate().isPresent(), () -> tree.validate().get().toString());
+        Assertions.assertEquals(new ArrayList<>(expected), toList(tree));
+        Assertions.assertEquals(expected.size(), tree.size());
+    }
+
+    @Test
+    void testSplit() {
+        Random random = new Random(18);
+        TreeSet<Integer> expected = new TreeSet<>();
+        AvlTree<Integer> tree = randomTree(random, 1000, 5000, expected);
+
+        AvlSplit<Integer> split = tree.split(2500);
+        Assertions.assertTrue(tree.isEmpty());
+        Assertions.assertEquals(expected.contains(2500), split.getPivot().isPresent());
+        assertValid(split.getLeft(), new TreeSet<>(expected.headSet(2500)));
+        assertValid(split.getRight(), new TreeSet<>(expected.tailSet(2500, false)));
+
+        Integer present = expected.ceiling(2500);
+        AvlTree<Integer> rejoined = AvlTree.union(split.getLeft(), split.getRight());
+        split.getPivot().ifPresent(rejoined::insertNode);
+        split = rejoined.split(present);
+        Assertions.assertEquals(present, split.getPivot().get().getValue());
+        Assertions.assertTrue(split.getPivot().get().isLeaf() && split.getPivot().get().isRoot());
+
+        AvlTree<Integer> joined = AvlTree.join(split.getLeft(), present, split.getRight());
+        assertValid(joined, expected);
+    }
+
+    @Test
+    void testJoinTreesOfDifferentHeights() {
+        for (int leftSize = 0; leftSize < 40; leftSize += 3) {
+            for (int rightSize = 0; rightSize < 200; rightSize += 17) {
+                TreeSet<Integer> expected = new TreeSet<>();
+                AvlTree<Integer> left = new AvlTree<>();
+                AvlTree<Integer> right = new AvlTree<>();
+                for (int value = 0; value < leftSize; value++) {
+                    left.insertNode(new Node<>(value));
+                    expected.add(value);
+                }
+                for (int value = 0; value < rightSize; value++) {
+                    right.insertNode(new Node<>(1000 + value));
+                    expected.add(1000 + value);
+                }
+                expected.add(500);
+                assertValid(AvlTree.join(left, 500, right), expected);
+            }
+        }
+        AvlTree<Integer> left = AvlTree.fromSorted(new Integer[]{1, 2, 3});
+        AvlTree<Integer> right = AvlTree.fromSorted(new Integer[]{4, 5});
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AvlTree.join(left, 0, right));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> AvlTree.join(left, 3, new AvlTree<Integer>(Comparator.reverseOrder())));
+    }
+
+    @Test
+    void testSetOperations() {
+        Random random = new Random(180);
+        int[][] sizes = {{0, 10}, {10, 0}, {1, 1000}, {1000, 1}, {500, 700}, {20000, 30000}, {100, 50000}};
+        for (int[] size : sizes) {
+            assertOperation(random, size, AvlTree::union, (first, second) -> {
+                first.addAll(second);
+                return first;
+            });
+            assertOperation(random, size, AvlTree::intersection, (first, second) -> {
+                first.retainAll(second);
+                return first;
+            });
+            assertOperation(random, size, AvlTree::difference, (first, second) -> {
+                first.removeAll(second);
+                return first;
+            });
+        }
+    }
+
+    private void assertOperation(Random random, int[] sizes,
+                                 BiFunction<AvlTree<Integer>, AvlTree<Integer>, AvlTree<Integer>> operation,
+                                 BiFunction<TreeSet<Integer>, TreeSet<Integer>, TreeSet<Integer>> expectedOperation) {
+        int bound = 2 * (sizes[0] + sizes[1]) + 1;
+        TreeSet<Integer> firstValues = new TreeSet<>();
+        TreeSet<Integer> secondValues = new TreeSet<>();
+        AvlTree<Integer> first = randomTree(random, sizes[0], bound, firstValues);
+        AvlTree<Integer> second = randomTree(random, sizes[1], bound, secondValues);
+        AvlTree<Integer> result = operation.apply(first, second);
+        Assertions.assertTrue(first.isEmpty() && second.isEmpty());
+        assertValid(result, expectedOperation.apply(firstValues, secondValues));
+    }
+
+    @Test
+    void testMultisetOperations() {
+        Random random = new Random(20);
+        int[][] sizes = {{0, 10}, {10, 0}, {300, 500}, {20000, 30000}};
+        for (int[] size : sizes) {
+            assertMultisetOperation(random, size, AvlTree::union, Math::max);
+            assertMultisetOperation(random, size, AvlTree::intersection, Math::min);
+            assertMultisetOperation(random, size, AvlTree::difference, (first, second) -> Math.max(0, first - second));
+        }
+
+        AvlTree<Integer> fives = AvlTree.multiset();
+        for (int i = 0; i < 3; i++) {
+            fives.insertNode(new Node<>(5));
+        }
+        AvlTree<Integer> five = AvlTree.multiset();
+        five.insertNode(new Node<>(5));
+        AvlTree<Integer> difference = AvlTree.difference(fives, five);
+        Assertions.assertEquals(2, difference.size());
+        Assertions.assertEquals(2, difference.count(5));
+    }
+
+    @Test
+    void testMultisetAndSetAreNotCombined() {
+        AvlTree<Integer> multiset = AvlTree.multiset();
+        multiset.insertNode(new Node<>(1));
+        multiset.insertNode(new Node<>(1));
+        AvlTree<Integer> set = AvlTree.fromSorted(new Integer[]{1, 2});
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AvlTree.union(multiset, set));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AvlTree.join(set, 3, multiset));
+
+        // equal values share one node, so the pivot must be strictly between the trees
+        AvlTree<Integer> right = AvlTree.multiset();
+        right.insertNode(new Node<>(4));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AvlTree.join(multiset, 1, right));
+        AvlTree<Integer> joined = AvlTree.join(multiset, 2, right);
+        Assertions.assertEquals(4, joined.size());
+        Assertions.assertEquals(2, joined.count(1));
+        Assertions.assertFalse(joined.validate().isPresent());
+    }
+
+    private void assertMultisetOperation(Random random, int[] sizes,
+                                         BiFunction<AvlTree<Integer>, AvlTree<Integer>, AvlTree<Integer>> operation,
+                                         BinaryOperator<Integer> expectedCount) {
+        int bound = (sizes[0] + sizes[1]) / 2 + 1;
+        TreeMap<Integer, Integer> firstCounts = new TreeMap<>();
+        TreeMap<Integer, Integer> secondCounts = new TreeMap<>();
+        AvlTree<Integer> first = randomMultiset(random, sizes[0], bound, firstCounts);
+        AvlTree<Integer> second = randomMultiset(random, sizes[1], bound, secondCounts);
+        AvlTree<Integer> result = operation.apply(first, second);
+
+        Assertions.assertTrue(result.isMultiset());
+        Assertions.assertFalse(result.validate().isPresent(), () -> result.validate().get().toString());
+        int expectedSize = 0;
+        for (int value = 0; value < bound; value++) {
+            int count = expectedCount.apply(firstCounts.getOrDefault(value, 0), secondCounts.getOrDefault(value, 0));
+            Assertions.assertEquals(count, result.count(value));
+            expectedSize += count;
+        }
+        Assertions.assertEquals(expectedSize, result.size());
+    }
+
+    private static AvlTree<Integer> randomMultiset(Random random, int size, int bound,
+                                                   TreeMap<Integer, Integer> counts) {
+        AvlTree<Integer> tree = AvlTree.multiset();
+        for (int i = 0; i < size; i++) {
+            int value = random.nextInt(bound);
+            tree.insertNode(new Node<>(value));
+            counts.merge(value, 1, Integer::sum);
+        }
+        return tree;
+    }
+}
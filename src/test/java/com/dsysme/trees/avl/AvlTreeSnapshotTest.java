@@ -0,0 +1,166 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+class AvlTreeSnapshotTest {
+
+    @Test
+    void testSaveAndLoad() throws IOException {
+        Random random = new Random(5);
+        AvlTree<Integer> tree = new AvlTree<>();
+        for (int i = 0; i < 20000; i++) {
+            tree.insertNode(new Node<>(random.nextInt(10000) - 5000));
+        }
+        Path file = Files.createTempFile("tree", ".avl");
+        try {
+            AvlTreeSnapshot.save(tree, file, KeyCodec.INTEGER);
+            Assertions.assertEquals(16 + 4 * 20000, Files.size(file));
+
+            AvlTree<Integer> loaded = AvlTreeSnapshot.load(file, KeyCodec.INTEGER);
+            Assertions.assertEquals(tree.size(), loaded.size());
+            Assertions.assertEquals(toList(tree), toList(loaded));
+            // perfectly balanced
+            Assertions.assertEquals(14, loaded.getRoot().getHeight());
+            Assertions.assertEquals(20000, loaded.getRoot().getSize());
+            loaded.insertNode(new Node<>(123456));
+            Assertions.assertEquals(123456, loaded.last().get().getValue().intValue());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testMappedLookups() throws IOException {
+        AvlTree<Long> tree = new AvlTree<>();
+        for (long value = 0; value < 1000; value += 10) {
+            tree.insertNode(new Node<>(value));
+        }
+        Path file = Files.createTempFile("tree", ".avl");
+        try {
+            AvlTreeSnapshot.save(tree, file, KeyCodec.LONG);
+            AvlTreeSnapshot<Long> snapshot = AvlTreeSnapshot.map(file, KeyCodec.LONG);
+            Assertions.assertEquals(100, snapshot.size());
+            Assertions.assertEquals(500L, snapshot.get(50).longValue());
+            Assertions.assertTrue(snapshot.contains(990L));
+            Assertions.assertFalse(snapshot.contains(995L));
+            Assertions.assertEquals(Optional.of(20L), snapshot.floor(25L));
+            Assertions.assertEquals(Optional.of(20L), snapshot.floor(20L));
+            Assertions.assertEquals(Optional.of(10L), snapshot.lower(20L));
+            Assertions.assertEquals(Optional.of(30L), snapshot.ceiling(25L));
+            Assertions.assertEquals(Optional.of(30L), snapshot.higher(20L));
+            Assertions.assertEquals(Optional.empty(), snapshot.lower(0L));
+            Assertions.assertEquals(Optional.empty(), snapshot.higher(990L));
+            Assertions.assertEquals(toList(tree), toList(snapshot.toTree()));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> AvlTreeSnapshot.map(file, KeyCodec.INTEGER));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testComparatorAndEmpty() throws IOException {
+        AvlTree<Integer> tree = new AvlTree<>(Comparator.reverseOrder());
+        Path file = Files.createTempFile("tree", ".avl");
+        try {
+            AvlTreeSnapshot.save(tree, file, KeyCodec.INTEGER);
+            Assertions.assertTrue(AvlTreeSnapshot.load(file, KeyCodec.INTEGER).isEmpty());
+
+            for (int value = 0; value < 10; value++) {
+                tree.insertNode(new Node<>(value));
+            }
+            AvlTreeSnapshot.save(tree, file, KeyCodec.INTEGER);
+            AvlTreeSnapshot<Integer> snapshot = AvlTreeSnapshot.map(file, KeyCodec.INTEGER, Comparator.reverseOrder());
+            Assertions.assertEquals(9, snapshot.get(0).intValue());
+            Assertions.assertEquals(Optional.of(4), snapshot.higher(5));
+            AvlTree<Integer> loaded = AvlTreeSnapshot.load(file, KeyCodec.INTEGER, Comparator.reverseOrder());
+            Assertions.assertEquals(toList(tree), toList(loaded));
+            Assertions.assertEquals(Optional.of(4), loaded.higher(5).map(Node::getValue));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testMultiset() throws IOException {
+        AvlTree<Integer> tree = AvlTree.multiset();
+        for (int value : new int[]{3, 1, 3, 2, 3, 1}) {
+            tree.insertNode(new Node<>(value));
+        }
+        Path file = Files.createTempFile("tree", ".avl");
+        try {
+            AvlTreeSnapshot.save(tree, file, KeyCodec.INTEGER);
+            AvlTreeSnapshot<Integer> snapshot = AvlTreeSnapshot.map(file, KeyCodec.INTEGER);
+            Assertions.assertTrue(snapshot.isMultiset());
+            Assertions.assertEquals(6, snapshot.size());
+
+            AvlTree<Integer> loaded = snapshot.toTree();
+            Assertions.assertTrue(loaded.isMultiset());
+            Assertions.assertEquals(toList(tree), toList(loaded));
+            Assertions.assertEquals(6, loaded.size());
+            Assertions.assertEquals(3, loaded.count(3));
+            // one counted node per distinct value, six separate nodes would be two levels deep
+            Assertions.assertEquals(1, loaded.getRoot().getHeight());
+            Assertions.assertFalse(loaded.validate().isPresent());
+
+            AvlTreeSnapshot.save(AvlTree.fromSorted(new Integer[]{1, 1, 2}), file, KeyCodec.INTEGER);
+            Assertions.assertFalse(AvlTreeSnapshot.load(file, KeyCodec.INTEGER).isMultiset());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void testCodecWidth() throws IOException {
+        AvlTree<Integer> tree = AvlTree.fromSorted(new Integer[]{1, 2, 3});
+        Path file = Files.createTempFile("tree", ".avl");
+        try {
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> AvlTreeSnapshot.save(tree, file, paddedCodec(0)));
+
+            // wider than the write buffer
+            KeyCodec<Integer> wide = paddedCodec(100_000);
+            AvlTreeSnapshot.save(tree, file, wide);
+            Assertions.assertEquals(16 + 3 * 100_000, Files.size(file));
+            Assertions.assertEquals(toList(tree), toList(AvlTreeSnapshot.load(file, wide)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static KeyCodec<Integer> paddedCodec(int width) {
+        return new KeyCodec<Integer>() {
+            @Override
+            public int width() {
+                return width;
+            }
+
+            @Override
+            public void write(ByteBuffer buffer, Integer value) {
+                buffer.putInt(value);
+                buffer.position(buffer.position() + width - Integer.BYTES);
+            }
+
+            @Override
+            public Integer read(ByteBuffer buffer, int offset) {
+                return buffer.getInt(offset);
+            }
+        };
+    }
+
+    private static <T extends Comparable> List<T> toList(AvlTree<T> tree) {
+        List<T> values = new ArrayList<>();
+        tree.forEach(values::add);
+        return values;
+    }
+}
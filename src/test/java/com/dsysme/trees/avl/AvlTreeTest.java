@@ -4,8 +4,20 @@ package com.dsysme.trees.avl;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 class AvlTreeTest {
 
@@ -120,9 +132,8 @@ class AvlTreeTest {
 
     }
 
-    boolean allNodesAreBalanced(AvlTree tree) {
-        List<Node> allNodes = tree.getNodesAsList();
-        return allNodes.stream().allMatch(node -> node.getBalanceDetails().isBalanced());
+    boolean allNodesAreBalanced(AvlTree<?> tree) {
+        return !tree.validate().isPresent();
     }
 
     @Test
@@ -198,4 +209,597 @@ class AvlTreeTest {
         Assertions.assertTrue(allNodesAreBalanced(tree));
         Assertions.assertTrue(tree.toString().equals("[[ 1 ] 3 [ 5 ]] 6 [ 10 ]"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCachedHeightsAfterManySortedInserts() {
+        AvlTree<Integer> tree = new AvlTree<>(new Node<>(0));
+        int count = 100_000;
+        for (int i = 1; i < count; i++) {
+            tree.insertNode(new Node<>(i));
+        }
+        // a perfectly balanced tree of 2^17 - 1 nodes has height 16, AVL stays within 1.44 log2(n)
+        Assertions.assertTrue(tree.getRoot().getHeight() <= 1.44 * Math.log(count) / Math.log(2));
+        assertCachedHeights(tree.getRoot());
+    }
+
+    @Test
+    void testCachedHeightsMatchLongestPath() {
+        Integer[] arr = {50, 20, 70, 10, 30, 60, 80, 25, 27, 26, 5, 1, 3, 2};
+        AvlTree<Integer> tree = buildIntegerTree(Arrays.asList(arr));
+        Assertions.assertTrue(allNodesAreBalanced(tree));
+        assertCachedHeights(tree.getRoot());
+    }
+
+    private static int assertCachedHeights(Node<?> node) {
+        int leftHeight = node.getLeft().isPresent() ? assertCachedHeights(node.getLeft().get()) : -1;
+        int rightHeight = node.getRight().isPresent() ? assertCachedHeights(node.getRight().get()) : -1;
+        Assertions.assertEquals(Math.max(leftHeight, rightHeight) + 1, node.getHeight());
+        Assertions.assertTrue(Math.abs(leftHeight - rightHeight) < 2);
+        node.getLeft().ifPresent(child -> Assertions.assertSame(node, child.getParent().get()));
+        node.getRight().ifPresent(child -> Assertions.assertSame(node, child.getParent().get()));
+        return node.getHeight();
+    }
+
+    @Test
+    void testFindAndContains() {
+        Integer[] arr = {10, 6, 16, 11, 14, 3, 20};
+        AvlTree<Integer> tree = buildIntegerTree(Arrays.asList(arr));
+        for (Integer value : arr) {
+            Assertions.assertTrue(tree.contains(value));
+            Assertions.assertEquals(value, tree.find(value).get().getValue());
+        }
+        Assertions.assertFalse(tree.contains(7));
+        Assertions.assertFalse(tree.find(21).isPresent());
+    }
+
+    @Test
+    void testNavigation() {
+        Integer[] arr = {10, 6, 16, 11, 14, 3, 20};
+        AvlTree<Integer> tree = buildIntegerTree(Arrays.asList(arr));
+
+        Assertions.assertEquals(3, tree.first().get().getValue().intValue());
+        Assertions.assertEquals(20, tree.last().get().getValue().intValue());
+
+        Assertions.assertEquals(10, tree.floor(10).get().getValue().intValue());
+        Assertions.assertEquals(11, tree.floor(12).get().getValue().intValue());
+        Assertions.assertFalse(tree.floor(2).isPresent());
+        Assertions.assertEquals(6, tree.lower(10).get().getValue().intValue());
+        Assertions.assertFalse(tree.lower(3).isPresent());
+
+        Assertions.assertEquals(14, tree.ceiling(14).get().getValue().intValue());
+        Assertions.assertEquals(14, tree.ceiling(12).get().getValue().intValue());
+        Assertions.assertFalse(tree.ceiling(21).isPresent());
+        Assertions.assertEquals(16, tree.higher(14).get().getValue().intValue());
+        Assertions.assertFalse(tree.higher(20).isPresent());
+    }
+
+    @Test
+    void testRemoveLeafWithRotation() {
+        Integer[] arr = {10, 6, 16, 18};
+        AvlTree<Integer> tree = buildIntegerTree(Arrays.asList(arr));
+        Assertions.assertTrue(tree.remove(6));
+        Assertions.assertEquals("[ 10 ] 16 [ 18 ]", tree.toString());
+        Assertions.assertFalse(tree.getRoot().getParent().isPresent());
+        assertCachedHeights(tree.getRoot());
+    }
+
+    @Test
+    void testRemoveNodeWithTwoChildrenKeepsNodes() {
+        Integer[] arr = {10, 6, 16, 3, 8, 14, 20, 18};
+        AvlTree<Integer> tree = buildIntegerTree(Arrays.asList(arr));
+        Node<Integer> nodeSixteen = tree.find(16).get();
+        Node<Integer> nodeEighteen = tree.find(18).get();
+
+        tree.removeNode(nodeSixteen);
+        Assertions.assertEquals("[[ 3 ] 6 [ 8 ]] 10 [[ 14 ] 18 [ 20 ]]", tree.toString());
+        Assertions.assertSame(nodeEighteen, tree.getRoot().getRight().get());
+        Assertions.assertSame(tree.getRoot(), nodeEighteen.getParent().get());
+        Assertions.assertTrue(nodeSixteen.isLeaf() && nodeSixteen.isRoot());
+        assertCachedHeights(tree.getRoot());
+
+        tree.insertNode(nodeSixteen);
+        Assertions.assertTrue(tree.contains(16));
+    }
+
+    @Test
+    void testRemoveMissingAndForeignNode() {
+        AvlTree<Integer> tree = buildIntegerTree(Arrays.asList(10, 6, 16));
+        Assertions.assertFalse(tree.remove(7));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tree.removeNode(new Node<>(6)));
+    }
+
+    @Test
+    void testRemoveAllInRandomOrder() {
+        Random random = new Random(7);
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            values.add(random.nextInt(500));
+        }
+        AvlTree<Integer> tree = new AvlTree<>();
+        values.forEach(value -> tree.insertNode(new Node<>(value)));
+        assertCachedHeights(tree.getRoot());
+
+        Collections.shuffle(values, random);
+        for (int i = 0; i < values.size(); i++) {
+            Assertions.assertTrue(tree.remove(values.get(i)));
+            if (i % 100 == 0 && !tree.isEmpty()) {
+                assertCachedHeights(tree.getRoot());
+            }
+        }
+        Assertions.assertTrue(tree.isEmpty());
+        Assertions.assertEquals("", tree.toString());
+    }
+
+    @Test
+    void testFromSorted() {
+        Integer[] sorted = new Integer[1000];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i / 2;
+        }
+        AvlTree<Integer> tree = AvlTree.fromSorted(sorted);
+        assertCachedHeights(tree.getRoot());
+        Assertions.assertEquals(9, tree.getRoot().getHeight());
+        Assertions.assertEquals(0, tree.first().get().getValue().intValue());
+        Assertions.assertEquals(499, tree.last().get().getValue().intValue());
+        for (int i = 0; i < 500; i++) {
+            Assertions.assertTrue(tree.contains(i));
+        }
+
+        Assertions.assertEquals("[ 1 ] 2 [ 3 ]", AvlTree.fromSorted(Arrays.asList(1, 2, 3)).toString());
+        Assertions.assertEquals("[ 1 ] 2 ", AvlTree.fromSorted(Arrays.asList(1, 2).iterator()).toString());
+        Assertions.assertTrue(AvlTree.fromSorted(new Integer[0]).isEmpty());
+    }
+
+    @Test
+    void testFromSortedRejectsUnsortedInput() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AvlTree.fromSorted(Arrays.asList(1, 3, 2)));
+    }
+
+    @Test
+    void testFromUnsorted() {
+        AvlTree<Character> tree = AvlTree.fromUnsorted(Arrays.asList('M', 'N', 'O', 'L', 'K', 'Q', 'P', 'H', 'I', 'A'));
+        assertCachedHeights(tree.getRoot());
+        Assertions.assertEquals("[[[ A ] H ] I [[ K ] L ]] M [[[ N ] O ] P [ Q ]]", tree.toString());
+        Assertions.assertEquals('A', tree.first().get().getValue().charValue());
+        Assertions.assertEquals('Q', tree.last().get().getValue().charValue());
+    }
+
+    private static <T extends Comparable> List<T> inOrder(Node<T> node, List<T> accumulator) {
+        node.getLeft().ifPresent(left -> inOrder(left, accumulator));
+        accumulator.add(node.getValue());
+        node.getRight().ifPresent(right -> inOrder(right, accumulator));
+        return accumulator;
+    }
+
+    private static void assertInsertAll(int treeSize, int batchSize) {
+        Random random = new Random(treeSize + batchSize);
+        List<Integer> expected = new ArrayList<>();
+        AvlTree<Integer> tree = new AvlTree<>();
+        for (int i = 0; i < treeSize; i++) {
+            int value = random.nextInt(10 * treeSize + 1);
+            expected.add(value);
+            tree.insertNode(new Node<>(value));
+        }
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(random.nextInt(10 * treeSize + 1));
+        }
+        expected.addAll(batch);
+        Collections.sort(expected);
+
+        tree.insertAll(batch);
+        Assertions.assertEquals(expected.size(), tree.size());
+        Assertions.assertEquals(expected, inOrder(tree.getRoot(), new ArrayList<>()));
+        assertCachedHeights(tree.getRoot());
+    }
+
+    @Test
+    void testInsertAllSmallBatchIntoLargeTree() {
+        assertInsertAll(5000, 50);
+    }
+
+    @Test
+    void testInsertAllLargeBatchIntoSmallTree() {
+        assertInsertAll(100, 5000);
+    }
+
+    @Test
+    void testInsertAllIntoEmptyTree() {
+        assertInsertAll(0, 1000);
+        AvlTree<Integer> tree = new AvlTree<>();
+        tree.insertAll(Arrays.asList(3, 1, 2));
+        Assertions.assertEquals("[ 1 ] 2 [ 3 ]", tree.toString());
+    }
+
+    @Test
+    void testSizeFollowsInsertAndRemove() {
+        AvlTree<Integer> tree = buildIntegerTree(Arrays.asList(10, 6, 16, 11, 14));
+        Assertions.assertEquals(5, tree.size());
+        tree.remove(11);
+        tree.remove(12);
+        Assertions.assertEquals(4, tree.size());
+        Assertions.assertEquals(4, new AvlTree<>(tree.getRoot()).size());
+    }
+
+    @Test
+    void testGetNodesAsListVisitsAllNodesInOrder() {
+        AvlTree<Integer> tree = buildIntegerTree(Arrays.asList(50, 20, 70, 10, 30, 60, 80, 25, 27, 26, 5, 1, 3, 2));
+        List<Integer> values = tree.getNodesAsList().stream().map(Node::getValue).collect(Collectors.toList());
+        Assertions.assertEquals(Arrays.asList(1, 2, 3, 5, 10, 20, 25, 26, 27, 30, 50, 60, 70, 80), values);
+    }
+
+    @Test
+    void testIteration() {
+        AvlTree<Integer> tree = buildIntegerTree(Arrays.asList(10, 6, 16, 11, 14, 3, 20));
+        List<Integer> ascending = new ArrayList<>();
+        tree.forEach(ascending::add);
+        Assertions.assertEquals(Arrays.asList(3, 6, 10, 11, 14, 16, 20), ascending);
+
+        List<Integer> descending = new ArrayList<>();
+        tree.descendingIterator().forEachRemaining(descending::add);
+        Collections.reverse(descending);
+        Assertions.assertEquals(ascending, descending);
+
+        Assertions.assertFalse(new AvlTree<Integer>().iterator().hasNext());
+    }
+
+    @Test
+    void testIteratorRemove() {
+        AvlTree<Integer> tree = AvlTree.fromSorted(IntStream.range(0, 100).boxed().collect(Collectors.toList()));
+        Iterator<Integer> iterator = tree.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 3 != 0) {
+                iterator.remove();
+            }
+        }
+        Assertions.assertEquals(34, tree.size());
+        Assertions.assertEquals(IntStream.range(0, 34).map(i -> i * 3).boxed().collect(Collectors.toList()),
+                tree.stream().collect(Collectors.toList()));
+        assertCachedHeights(tree.getRoot());
+    }
+
+    @Test
+    void testIteratorFailsFast() {
+        AvlTree<Integer> tree = buildIntegerTree(Arrays.asList(1, 2, 3));
+        Iterator<Integer> iterator = tree.iterator();
+        iterator.next();
+        tree.insertNode(new Node<>(4));
+        Assertions.assertThrows(ConcurrentModificationException.class, iterator::next);
+    }
+
+    @Test
+    void testSpliteratorSplitsWholeRange() {
+        AvlTree<Integer> tree = AvlTree.fromSorted(IntStream.range(0, 1000).boxed().collect(Collectors.toList()));
+        Spliterator<Integer> suffix = tree.spliterator();
+        Assertions.assertEquals(1000, suffix.getExactSizeIfKnown());
+        Spliterator<Integer> prefix = suffix.trySplit();
+        Assertions.assertNotNull(prefix);
+        List<Integer> values = new ArrayList<>();
+        prefix.forEachRemaining(values::add);
+        Assertions.assertTrue(values.size() > 400 && values.size() < 600);
+        suffix.forEachRemaining(values::add);
+        Assertions.assertEquals(IntStream.range(0, 1000).boxed().collect(Collectors.toList()), values);
+
+        Assertions.assertEquals(499500L, tree.stream().parallel().mapToLong(Integer::longValue).sum());
+        Assertions.assertEquals(IntStream.range(0, 1000).boxed().collect(Collectors.toList()),
+                tree.stream().parallel().collect(Collectors.toList()));
+    }
+
+    @Test
+    void testSpliteratorOnSmallTrees() {
+        for (int size = 0; size < 20; size++) {
+            List<Integer> expected = IntStream.range(0, size).boxed().collect(Collectors.toList());
+            AvlTree<Integer> tree = buildIntegerTree(expected.isEmpty() ? Collections.singletonList(0) : expected);
+            if (expected.isEmpty()) {
+                tree.remove(0);
+            }
+            Assertions.assertEquals(expected, tree.stream().parallel().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void testOrderStatistics() {
+        Random random = new Random(17);
+        List<Integer> values = new ArrayList<>();
+        AvlTree<Integer> tree = new AvlTree<>();
+        for (int i = 0; i < 3000; i++) {
+            int value = random.nextInt(1000);
+            values.add(value);
+            tree.insertNode(new Node<>(value));
+        }
+        for (int i = 0; i < 1000; i++) {
+            Integer value = values.remove(random.nextInt(values.size()));
+            tree.remove(value);
+        }
+        Collections.sort(values);
+
+        Assertions.assertEquals(values.size(), tree.getRoot().getSize());
+        for (int index = 0; index < values.size(); index += 7) {
+            Assertions.assertEquals(values.get(index), tree.select(index).getValue());
+        }
+        for (int value = -1; value <= 1000; value += 13) {
+            int expectedRank = 0;
+            while (expectedRank < values.size() && values.get(expectedRank) < value) {
+                expectedRank++;
+            }
+            Assertions.assertEquals(expectedRank, tree.rank(value));
+            int low = value;
+            int high = value + 100;
+            Assertions.assertEquals(values.stream().filter(v -> v >= low && v <= high).count(), tree.countRange(low, high));
+        }
+        Assertions.assertEquals(0, tree.countRange(10, 5));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> tree.select(values.size()));
+    }
+
+    @Test
+    void testQuantiles() {
+        AvlTree<Integer> tree = AvlTree.fromUnsorted(IntStream.rangeClosed(1, 100).boxed().collect(Collectors.toList()));
+        Assertions.assertEquals(50, tree.quantile(0.5).intValue());
+        Assertions.assertEquals(99, tree.percentile(99).intValue());
+        Assertions.assertEquals(1, tree.quantile(0).intValue());
+        Assertions.assertEquals(100, tree.quantile(1).intValue());
+        tree.remove(50);
+        Assertions.assertEquals(51, tree.quantile(0.5).intValue());
+        Assertions.assertThrows(NoSuchElementException.class, () -> new AvlTree<Integer>().quantile(0.5));
+    }
+
+    @Test
+    void testMetricsListener() {
+        AvlTree<Integer> tree = new AvlTree<>();
+        AvlTreeMetrics metrics = new AvlTreeMetrics();
+        tree.setListener(metrics);
+        for (int value = 1; value <= 7; value++) {
+            tree.insertNode(new Node<>(value));
+        }
+        // ascending inserts only ever need single left rotations
+        Assertions.assertEquals(4, metrics.getLeftRotations());
+        Assertions.assertEquals(0, metrics.getRightRotations() + metrics.getLeftRightRotations() + metrics.getRightLeftRotations());
+        Assertions.assertEquals(7, metrics.getSize());
+        Assertions.assertEquals(2, metrics.getHeight());
+        Assertions.assertEquals(6, metrics.getInserts());
+
+        metrics.reset();
+        Assertions.assertTrue(tree.contains(4));
+        Assertions.assertTrue(tree.contains(7));
+        Assertions.assertFalse(tree.contains(8));
+        Assertions.assertEquals(4, tree.lower(5).get().getValue().intValue());
+        AvlTreeMetrics.Snapshot snapshot = metrics.snapshot();
+        Assertions.assertEquals(4, snapshot.getDescents(AvlTreeListener.Operation.SEARCH));
+        Assertions.assertEquals(1 + 3 + 3 + 3, snapshot.getComparisons(AvlTreeListener.Operation.SEARCH));
+        Assertions.assertEquals(2.5, snapshot.getAverageComparisons(AvlTreeListener.Operation.SEARCH));
+        long[] histogram = snapshot.getPathLengthHistogram();
+        Assertions.assertEquals(1, histogram[1]);
+        Assertions.assertEquals(3, histogram[3]);
+
+        tree.remove(1);
+        tree.remove(2);
+        tree.remove(3);
+        Assertions.assertEquals(3, metrics.getRemoves());
+        Assertions.assertEquals(4, metrics.getSize());
+        Assertions.assertEquals(1, metrics.getLeftRotations());
+
+        tree.setListener(null);
+        tree.insertNode(new Node<>(8));
+        Assertions.assertEquals(4, metrics.getSize());
+    }
+
+    @Test
+    void testWriteToMatchesRecursiveFormat() throws IOException {
+        Random random = new Random(16);
+        AvlTree<Integer> tree = new AvlTree<>();
+        for (int i = 0; i < 500; i++) {
+            tree.insertNode(new Node<>(random.nextInt(100)));
+        }
+        StringBuilder out = new StringBuilder();
+        tree.writeTo(out);
+        Assertions.assertEquals(recursiveFormat(tree.getRoot()), out.toString());
+        Assertions.assertEquals(recursiveFormat(tree.getRoot()), tree.toString());
+        Node<Integer> subtree = tree.getRoot().getLeft().get();
+        Assertions.assertEquals(recursiveFormat(subtree), subtree.toString());
+    }
+
+    @Test
+    void testWriteToLimits() throws IOException {
+        AvlTree<Integer> tree = AvlTree.fromSorted(new Integer[]{1, 2, 3, 4, 5, 6, 7});
+        StringBuilder out = new StringBuilder();
+        tree.writeTo(out, 1, Integer.MAX_VALUE);
+        Assertions.assertEquals("[[...] 2 [...]] 4 [[...] 6 [...]]", out.toString());
+        out.setLength(0);
+        tree.writeTo(out, 0, Integer.MAX_VALUE);
+        Assertions.assertEquals("[...] 4 [...]", out.toString());
+        out.setLength(0);
+        tree.writeTo(out, Integer.MAX_VALUE, 5);
+        Assertions.assertEquals("[[ 1 ] 2 [ 3 ]] 4 [[ 5 ] ... ]", out.toString());
+        out.setLength(0);
+        tree.writeTo(out, Integer.MAX_VALUE, 7);
+        Assertions.assertEquals(tree.toString(), out.toString());
+    }
+
+    private static String recursiveFormat(Node<Integer> node) {
+        return String.format("%s %s %s"
+                , node.getLeft().isPresent() ? "[" + recursiveFormat(node.getLeft().get()) + "]" : ""
+                , node.getValue(), node.getRight().isPresent() ? "[" + recursiveFormat(node.getRight().get()) + "]" : "");
+    }
+
+    @Test
+    void testValidateAcceptsValidTrees() {
+        Random random = new Random(17);
+        AvlTree<Integer> tree = new AvlTree<>();
+        Assertions.assertFalse(tree.validate().isPresent());
+        for (int i = 0; i < 3000; i++) {
+            tree.insertNode(new Node<>(random.nextInt(200)));
+            if (i % 3 == 0) {
+                tree.remove(random.nextInt(200));
+            }
+        }
+        Assertions.assertFalse(tree.validate().isPresent());
+    }
+
+    @Test
+    void testValidateReportsFirstViolationWithPath() {
+        AvlTree<Integer> tree = AvlTree.fromSorted(new Integer[]{1, 2, 3, 4, 5, 6, 7});
+        Node<Integer> root = tree.getRoot();
+        Node<Integer> nodeTwo = root.getLeft().get();
+        Node<Integer> nodeThree = nodeTwo.getRight().get();
+
+        nodeThree.setValue(5);
+        AvlViolation<Integer> violation = tree.validate().get();
+        Assertions.assertEquals(AvlViolation.Type.ORDER, violation.getType());
+        Assertions.assertEquals(Arrays.asList(root, nodeTwo, nodeThree), violation.getPath());
+        Assertions.assertEquals("ORDER at [4 -> 2 -> 5]: 5 outside [2, 4]", violation.toString());
+        nodeThree.setValue(3);
+
+        nodeThree.setParent(Optional.empty());
+        violation = tree.validate().get();
+        Assertions.assertEquals(AvlViolation.Type.PARENT_LINK, violation.getType());
+        Assertions.assertSame(nodeTwo, violation.getNode());
+        nodeThree.setParent(Optional.of(nodeTwo));
+
+        nodeTwo.setRight(Optional.empty());
+        Assertions.assertEquals(AvlViolation.Type.SIZE, tree.validate().get().getType());
+        Node<Integer> nodeOne = nodeTwo.getLeft().get();
+        nodeTwo.setLeft(Optional.empty());
+        Assertions.assertEquals(AvlViolation.Type.HEIGHT, tree.validate().get().getType());
+        nodeTwo.setLeft(Optional.of(nodeOne));
+        nodeTwo.setRight(Optional.of(nodeThree));
+        Assertions.assertFalse(tree.validate().isPresent());
+
+        Node<Integer> nodeSeven = tree.last().get();
+        Node<Integer> nodeEight = new Node<>(8);
+        nodeSeven.setRight(Optional.of(nodeEight));
+        nodeEight.setParent(Optional.of(nodeSeven));
+        nodeSeven.update();
+        nodeSeven.getParent().get().update();
+        root.update();
+        violation = tree.validate().get();
+        Assertions.assertEquals(AvlViolation.Type.TREE_SIZE, violation.getType());
+        Assertions.assertSame(nodeEight, violation.getNode());
+    }
+
+    @Test
+    void testValidateReportsUnbalancedChain() {
+        Node<Integer> nodeOne = new Node<>(1);
+        Node<Integer> nodeTwo = new Node<>(2);
+        Node<Integer> nodeThree = new Node<>(3);
+        nodeOne.setRight(Optional.of(nodeTwo));
+        nodeTwo.setParent(Optional.of(nodeOne));
+        nodeTwo.setRight(Optional.of(nodeThree));
+        nodeThree.setParent(Optional.of(nodeTwo));
+        nodeThree.update();
+        nodeTwo.update();
+        nodeOne.update();
+        AvlViolation<Integer> violation = new AvlTree<>(nodeOne).validate().get();
+        Assertions.assertEquals(AvlViolation.Type.BALANCE, violation.getType());
+        Assertions.assertEquals(Collections.singletonList(nodeOne), violation.getPath());
+    }
+
+    @Test
+    void testMultisetCountsDuplicates() {
+        Random random = new Random(20);
+        AvlTree<Integer> tree = AvlTree.multiset();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            // skewed towards small keys
+            int value = (int) Math.abs(random.nextGaussian() * 5);
+            expected.add(value);
+            tree.insertNode(new Node<>(value));
+        }
+        Collections.sort(expected);
+        Assertions.assertTrue(tree.isMultiset());
+        Assertions.assertEquals(5000, tree.size());
+        Assertions.assertEquals(new TreeSet<>(expected).size(), tree.getNodesAsList().size());
+        Assertions.assertTrue(tree.getRoot().getHeight() < 6);
+        Assertions.assertEquals(expected, tree.stream().collect(Collectors.toList()));
+        Assertions.assertEquals(expected, tree.stream().parallel().collect(Collectors.toList()));
+        Assertions.assertEquals(Collections.frequency(expected, 3), tree.count(3));
+        Assertions.assertEquals(Collections.frequency(expected, 3), tree.find(3).get().getCount());
+        Assertions.assertEquals(0, tree.count(1000));
+        for (int index = 0; index < expected.size(); index += 97) {
+            Assertions.assertEquals(expected.get(index), tree.select(index).getValue());
+        }
+        Assertions.assertEquals(expected.indexOf(4), tree.rank(4));
+        Assertions.assertEquals(expected.get(2499), tree.quantile(0.5));
+
+        int threes = tree.count(3);
+        Assertions.assertTrue(tree.remove(3));
+        Assertions.assertEquals(threes - 1, tree.count(3));
+        Assertions.assertEquals(4999, tree.size());
+        expected.remove(Integer.valueOf(3));
+
+        tree.insertAll(Arrays.asList(3, 3, 100, 100, 0));
+        expected.addAll(Arrays.asList(3, 3, 100, 100, 0));
+        Collections.sort(expected);
+        Assertions.assertEquals(expected, tree.stream().collect(Collectors.toList()));
+        Assertions.assertEquals(2, tree.count(100));
+        Assertions.assertFalse(tree.validate().isPresent());
+    }
+
+    @Test
+    void testMultisetRebuildAndIteratorRemove() {
+        AvlTree<Integer> tree = AvlTree.multiset();
+        tree.insertAll(Arrays.asList(5, 1, 5, 2, 5, 1));
+        Assertions.assertEquals(3, tree.getNodesAsList().size());
+        Assertions.assertEquals(Arrays.asList(1, 1, 2, 5, 5, 5), tree.stream().collect(Collectors.toList()));
+
+        Iterator<Integer> iterator = tree.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() != 2) {
+                iterator.remove();
+            }
+            if (tree.count(5) == 1) {
+                break;
+            }
+        }
+        Assertions.assertEquals(Arrays.asList(2, 5), tree.stream().collect(Collectors.toList()));
+        Assertions.assertEquals(2, tree.size());
+        Assertions.assertFalse(tree.validate().isPresent());
+
+        Node<Integer> five = tree.find(5).get();
+        tree.insertNode(new Node<>(5));
+        Assertions.assertEquals(2, five.getCount());
+        tree.removeNode(five);
+        Assertions.assertEquals(1, tree.size());
+        Assertions.assertFalse(tree.contains(5));
+    }
+
+    @Test
+    void testAppendModeFastPath() {
+        AvlTree<Integer> tree = new AvlTree<>();
+        tree.setAppendMode(true);
+        for (Integer value : new Integer[]{10, 6, 16, 18, 20}) {
+            tree.insertNode(new Node<>(value));
+        }
+        // 10 starts the tree, 6 falls back, 16, 18 and 20 are appended
+        Assertions.assertEquals(3, tree.getAppendHits());
+        Assertions.assertEquals("[ 6 ] 10 [[ 16 ] 18 [ 20 ]]", tree.toString());
+
+        tree.remove(20);
+        tree.insertNode(new Node<>(19));
+        Assertions.assertEquals(4, tree.getAppendHits());
+        tree.insertNode(new Node<>(19));
+        Assertions.assertEquals(5, tree.getAppendHits());
+        Assertions.assertEquals(Arrays.asList(6, 10, 16, 18, 19, 19), tree.stream().collect(Collectors.toList()));
+
+        Random random = new Random(22);
+        List<Integer> expected = new ArrayList<>(tree.stream().collect(Collectors.toList()));
+        int timestamp = 100;
+        for (int i = 0; i < 5000; i++) {
+            // mostly increasing with a few late arrivals
+            int value = i % 50 == 0 ? timestamp - random.nextInt(100) : timestamp++;
+            expected.add(value);
+            tree.insertNode(new Node<>(value));
+        }
+        Assertions.assertTrue(tree.getAppendHits() >= 5 + 4900);
+        Collections.sort(expected);
+        Assertions.assertEquals(expected, tree.stream().collect(Collectors.toList()));
+        Assertions.assertFalse(tree.validate().isPresent());
+
+        AvlTree<Integer> counted = AvlTree.multiset();
+        counted.setAppendMode(true);
+        counted.insertNode(new Node<>(1));
+        counted.insertNode(new Node<>(1));
+        Assertions.assertEquals(1, counted.getAppendHits());
+        Assertions.assertEquals(2, counted.count(1));
+        Assertions.assertEquals(1, counted.getNodesAsList().size());
+    }
+}
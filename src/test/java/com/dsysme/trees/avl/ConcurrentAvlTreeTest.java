@@ -0,0 +1,180 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+class ConcurrentAvlTreeTest {
+
+    @Test
+    void testSingleThreaded() {
+        ConcurrentAvlTree<Integer> tree = new ConcurrentAvlTree<>();
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertTrue(tree.insert(i));
+        }
+        Assertions.assertFalse(tree.insert(500));
+        Assertions.assertEquals(1000, tree.size());
+        Assertions.assertTrue(tree.isConsistent());
+
+        for (int i = 0; i < 1000; i += 3) {
+            Assertions.assertTrue(tree.remove(i));
+        }
+        Assertions.assertFalse(tree.remove(3));
+        Assertions.assertTrue(tree.isConsistent());
+        Assertions.assertFalse(tree.contains(3));
+        Assertions.assertTrue(tree.contains(4));
+        Assertions.assertEquals(2, tree.floor(3).get().intValue());
+        Assertions.assertEquals(4, tree.ceiling(3).get().intValue());
+        Assertions.assertFalse(tree.floor(-1).isPresent());
+    }
+
+    /**
+     * Compares by value, a probe key can run a hook before comparing with another key to pause the search.
+     */
+    private static final class Key implements Comparable<Key> {
+        final int value;
+        final Consumer<Key> beforeCompare;
+
+        Key(int value) {
+            this(value, other -> {
+            });
+        }
+
+        Key(int value, Consumer<Key> beforeCompare) {
+            this.value = value;
+            this.beforeCompare = beforeCompare;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            beforeCompare.accept(other);
+            return Integer.compare(value, other.value);
+        }
+    }
+
+    /**
+     * The reader looking for 9 pauses at 12 on the way 8, 12, 10, 9. Removing 8 then moves 9 up to the root,
+     * out of the subtree the reader is heading into.
+     */
+    @Test
+    void testReaderOnSuccessorPathSeesMovedSuccessor() throws Exception {
+        ConcurrentAvlTree<Key> tree = new ConcurrentAvlTree<>();
+        for (int value = 1; value <= 15; value++) {
+            tree.insert(new Key(value));
+        }
+        CountDownLatch paused = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        AtomicBoolean pauseOnce = new AtomicBoolean(true);
+        Key probe = new Key(9, other -> {
+            if (other.value == 12 && pauseOnce.getAndSet(false)) {
+                paused.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Boolean> found = executor.submit(() -> tree.contains(probe));
+        Assertions.assertTrue(paused.await(10, TimeUnit.SECONDS));
+
+        Assertions.assertTrue(tree.remove(new Key(8)));
+        resume.countDown();
+        Assertions.assertTrue(found.get(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        Assertions.assertTrue(tree.isConsistent());
+        Assertions.assertTrue(tree.contains(new Key(9)));
+    }
+
+    /**
+     * Even keys are inserted up front and never removed, writers churn the odd keys they own while readers
+     * check that no even key ever goes missing.
+     */
+    @Test
+    void testReadersNeverMissStableKeysWhileWritersRotate() throws Exception {
+        int range = 20_000;
+        int writers = 2;
+        int readers = 4;
+        ConcurrentAvlTree<Integer> tree = new ConcurrentAvlTree<>();
+        for (int i = 0; i < range; i += 2) {
+            tree.insert(i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<BitSet>> writerResults = new ArrayList<>();
+        List<Future<Integer>> readerResults = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            writerResults.add(executor.submit(() -> {
+                Random random = new Random(writer);
+                BitSet owned = new BitSet(range);
+                start.await();
+                for (int op = 0; op < 200_000; op++) {
+                    // odd keys congruent to this writer
+                    int key = (random.nextInt(range / (2 * writers)) * writers + writer) * 2 + 1;
+                    if (random.nextBoolean()) {
+                        Assertions.assertEquals(!owned.get(key), tree.insert(key));
+                        owned.set(key);
+                    } else {
+                        Assertions.assertEquals(owned.get(key), tree.remove(key));
+                        owned.clear(key);
+                    }
+                }
+                return owned;
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            int reader = r;
+            readerResults.add(executor.submit(() -> {
+                Random random = new Random(100 + reader);
+                int missing = 0;
+                start.await();
+                while (writing.get()) {
+                    int key = random.nextInt(range / 2) * 2;
+                    if (!tree.contains(key)) {
+                        missing++;
+                    }
+                    int floor = tree.floor(key + 1).get();
+                    if (floor != key && floor != key + 1) {
+                        missing++;
+                    }
+                    if (tree.contains(-key - 1)) {
+                        missing++;
+                    }
+                }
+                return missing;
+            }));
+        }
+
+        start.countDown();
+        BitSet expectedOdd = new BitSet(range);
+        for (Future<BitSet> result : writerResults) {
+            expectedOdd.or(result.get(60, TimeUnit.SECONDS));
+        }
+        writing.set(false);
+        for (Future<Integer> result : readerResults) {
+            Assertions.assertEquals(0, result.get(60, TimeUnit.SECONDS).intValue());
+        }
+        executor.shutdown();
+
+        Assertions.assertTrue(tree.isConsistent());
+        for (int key = 0; key < range; key++) {
+            Assertions.assertEquals(key % 2 == 0 || expectedOdd.get(key), tree.contains(key));
+        }
+        Assertions.assertEquals(range / 2 + expectedOdd.cardinality(), tree.size());
+    }
+}
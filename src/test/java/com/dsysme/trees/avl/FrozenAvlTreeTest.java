@@ -0,0 +1,68 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+class FrozenAvlTreeTest {
+
+    private static Optional<Integer> value(Optional<Node<Integer>> node) {
+        return node.map(Node::getValue);
+    }
+
+    @Test
+    void testLookupsMatchTree() {
+        Random random = new Random(21);
+        // sizes around powers of two exercise complete and partial last levels
+        for (int size : new int[]{0, 1, 2, 3, 7, 8, 100, 1023, 1024, 1025, 5000}) {
+            AvlTree<Integer> tree = new AvlTree<>();
+            TreeSet<Integer> values = new TreeSet<>();
+            while (values.size() < size) {
+                int value = 2 * random.nextInt(4 * size + 1);
+                if (values.add(value)) {
+                    tree.insertNode(new Node<>(value));
+                }
+            }
+            FrozenAvlTree<Integer> frozen = tree.freeze();
+            Assertions.assertEquals(size, frozen.size());
+            Assertions.assertEquals(new ArrayList<>(values), frozen.stream().collect(Collectors.toList()));
+            Assertions.assertEquals(value(tree.first()), frozen.first());
+            Assertions.assertEquals(value(tree.last()), frozen.last());
+            for (int probe = -2; probe <= 8 * size + 3; probe += 1 + size / 300) {
+                Assertions.assertEquals(tree.contains(probe), frozen.contains(probe));
+                Assertions.assertEquals(value(tree.floor(probe)), frozen.floor(probe));
+                Assertions.assertEquals(value(tree.lower(probe)), frozen.lower(probe));
+                Assertions.assertEquals(value(tree.ceiling(probe)), frozen.ceiling(probe));
+                Assertions.assertEquals(value(tree.higher(probe)), frozen.higher(probe));
+            }
+        }
+    }
+
+    @Test
+    void testRangesAndDuplicates() {
+        AvlTree<Integer> tree = AvlTree.multiset(Comparator.reverseOrder());
+        tree.insertAll(Arrays.asList(1, 5, 5, 9, 3, 7, 5));
+        FrozenAvlTree<Integer> frozen = tree.freeze();
+        Assertions.assertEquals(7, frozen.size());
+        Assertions.assertEquals(Arrays.asList(9, 7, 5, 5, 5, 3, 1), frozen.stream().collect(Collectors.toList()));
+        Assertions.assertEquals(Arrays.asList(7, 5, 5, 5), frozen.range(8, 4).collect(Collectors.toList()));
+        List<Integer> found = new ArrayList<>();
+        frozen.forEachInRange(5, 5, found::add);
+        Assertions.assertEquals(Arrays.asList(5, 5, 5), found);
+        Assertions.assertEquals(Optional.of(3), frozen.higher(5));
+        Assertions.assertEquals(Optional.of(7), frozen.lower(5));
+        Assertions.assertEquals(Optional.of(9), frozen.floor(8));
+        Assertions.assertEquals(Optional.empty(), frozen.floor(10));
+
+        tree.remove(9);
+        Assertions.assertEquals(Optional.of(9), frozen.first());
+    }
+}
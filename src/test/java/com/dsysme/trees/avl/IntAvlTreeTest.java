@@ -0,0 +1,68 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+class IntAvlTreeTest {
+
+    private static IntAvlTree buildIntTree(int... elements) {
+        IntAvlTree tree = new IntAvlTree();
+        for (int element : elements) {
+            tree.insert(element);
+        }
+        return tree;
+    }
+
+    @Test
+    void testInsertWithRotations() {
+        Assertions.assertEquals("[ 6 ] 10 [[ 11 ] 14 [ 16 ]]", buildIntTree(10, 6, 16, 11, 14).toString());
+        Assertions.assertEquals("[[ 2 ] 4 [ 5 ]] 6 [ 10 ]", buildIntTree(10, 6, 5, 2, 4).toString());
+        Assertions.assertEquals("[ 6 ] 10 [[ 16 ] 18 [ 20 ]]", buildIntTree(10, 6, 16, 18, 20).toString());
+        Assertions.assertEquals("[[ 1 ] 3 [ 5 ]] 6 [ 10 ]", buildIntTree(10, 6, 5, 3, 1).toString());
+    }
+
+    @Test
+    void testSameShapeAsAvlTree() {
+        Random random = new Random(11);
+        IntAvlTree intTree = new IntAvlTree();
+        AvlTree<Integer> tree = new AvlTree<>();
+        for (int i = 0; i < 500; i++) {
+            int value = random.nextInt(200);
+            intTree.insert(value);
+            tree.insertNode(new Node<>(value));
+        }
+        for (int i = 0; i < 200; i++) {
+            int value = random.nextInt(200);
+            Assertions.assertEquals(tree.remove(value), intTree.remove(value));
+        }
+        Assertions.assertEquals(tree.toString(), intTree.toString());
+    }
+
+    @Test
+    void testNavigation() {
+        IntAvlTree tree = buildIntTree(10, 6, 16, 11, 14, 3, 20);
+        Assertions.assertTrue(tree.contains(11));
+        Assertions.assertNull(tree.find(7));
+        Assertions.assertEquals(3, tree.first().getValue());
+        Assertions.assertEquals(20, tree.last().getValue());
+        Assertions.assertEquals(11, tree.floor(12).getValue());
+        Assertions.assertEquals(6, tree.lower(10).getValue());
+        Assertions.assertEquals(14, tree.ceiling(12).getValue());
+        Assertions.assertEquals(16, tree.higher(14).getValue());
+        Assertions.assertNull(tree.higher(20));
+        Assertions.assertNull(tree.floor(2));
+    }
+
+    @Test
+    void testRemoveKeepsParentLinks() {
+        IntAvlTree tree = buildIntTree(10, 6, 16, 3, 8, 14, 20, 18);
+        IntNode nodeEighteen = tree.find(18);
+        tree.remove(16);
+        Assertions.assertEquals("[[ 3 ] 6 [ 8 ]] 10 [[ 14 ] 18 [ 20 ]]", tree.toString());
+        Assertions.assertSame(tree.getRoot(), nodeEighteen.getParent());
+        Assertions.assertSame(nodeEighteen, nodeEighteen.getLeft().getParent());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tree.removeNode(new IntNode(6)));
+    }
+}
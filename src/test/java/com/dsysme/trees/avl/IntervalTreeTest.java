@@ -0,0 +1,67 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+class IntervalTreeTest {
+
+    @Test
+    void testOverlapAndStabbing() {
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        tree.add(15, 20);
+        tree.add(10, 30);
+        tree.add(17, 19);
+        tree.add(5, 20);
+        tree.add(12, 15);
+        tree.add(30, 40);
+
+        Assertions.assertEquals(Arrays.asList(new Interval<>(5, 20), new Interval<>(10, 30), new Interval<>(12, 15)),
+                tree.stabbing(14).collect(Collectors.toList()));
+        Assertions.assertEquals(Arrays.asList(new Interval<>(10, 30), new Interval<>(30, 40)),
+                tree.stabbing(30).collect(Collectors.toList()));
+        Assertions.assertEquals(Collections.emptyList(), tree.overlapping(41, 50).collect(Collectors.toList()));
+        Assertions.assertEquals(Collections.emptyList(), tree.overlapping(0, 4).collect(Collectors.toList()));
+        Assertions.assertEquals(6, tree.overlapping(0, 100).count());
+
+        Assertions.assertTrue(tree.remove(new Interval<>(10, 30)));
+        Assertions.assertFalse(tree.remove(new Interval<>(10, 30)));
+        List<Interval<Integer>> found = new ArrayList<>();
+        tree.forEachStabbing(25, found::add);
+        Assertions.assertEquals(Collections.emptyList(), found);
+        Assertions.assertFalse(tree.validate().isPresent());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> tree.add(3, 2));
+    }
+
+    @Test
+    void testRandomQueriesAgainstScan() {
+        Random random = new Random(19);
+        IntervalTree<Integer> tree = new IntervalTree<>();
+        List<Interval<Integer>> intervals = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            int start = random.nextInt(10000);
+            Interval<Integer> interval = new Interval<>(start, start + random.nextInt(i % 10 == 0 ? 2000 : 50));
+            intervals.add(interval);
+            tree.add(interval);
+            if (i % 4 == 0) {
+                Interval<Integer> removed = intervals.remove(random.nextInt(intervals.size()));
+                Assertions.assertTrue(tree.remove(removed));
+            }
+        }
+        Assertions.assertFalse(tree.validate().isPresent());
+        Collections.sort(intervals);
+        for (int i = 0; i < 300; i++) {
+            int low = random.nextInt(11000);
+            int high = low + random.nextInt(100);
+            List<Interval<Integer>> expected = intervals.stream()
+                    .filter(interval -> interval.overlaps(low, high)).collect(Collectors.toList());
+            Assertions.assertEquals(expected, tree.overlapping(low, high).collect(Collectors.toList()));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LongAvlTreeTest {
+
+    @Test
+    void testTimestampKeys() {
+        long base = 1_700_000_000_000L;
+        LongAvlTree tree = new LongAvlTree();
+        for (long i = 0; i < 1000; i++) {
+            tree.insert(base + i * 10);
+        }
+        Assertions.assertTrue(tree.getRoot().getHeight() <= 10);
+        Assertions.assertTrue(tree.contains(base + 500));
+        Assertions.assertFalse(tree.contains(base + 505));
+        Assertions.assertEquals(base + 500, tree.floor(base + 505).getValue());
+        Assertions.assertEquals(base + 510, tree.ceiling(base + 505).getValue());
+        Assertions.assertEquals(base, tree.first().getValue());
+        Assertions.assertEquals(base + 9990, tree.last().getValue());
+
+        for (long i = 0; i < 1000; i += 2) {
+            Assertions.assertTrue(tree.remove(base + i * 10));
+        }
+        Assertions.assertEquals(base + 10, tree.first().getValue());
+        Assertions.assertEquals(base + 10, tree.lower(base + 20).getValue());
+    }
+}
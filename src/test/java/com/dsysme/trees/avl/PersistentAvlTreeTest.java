@@ -0,0 +1,90 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+class PersistentAvlTreeTest {
+
+    private static PersistentAvlTree<Integer> build(Integer... values) {
+        PersistentAvlTree<Integer> tree = PersistentAvlTree.empty();
+        for (Integer value : values) {
+            tree = tree.insert(value);
+        }
+        return tree;
+    }
+
+    @Test
+    void testSameShapeAsAvlTree() {
+        Assertions.assertEquals("[ 6 ] 10 [[ 11 ] 14 [ 16 ]]", build(10, 6, 16, 11, 14).toString());
+        Assertions.assertEquals("[[ 2 ] 4 [ 5 ]] 6 [ 10 ]", build(10, 6, 5, 2, 4).toString());
+        Assertions.assertEquals("[ 6 ] 10 [[ 16 ] 18 [ 20 ]]", build(10, 6, 16, 18, 20).toString());
+        Assertions.assertEquals("[[ 1 ] 3 [ 5 ]] 6 [ 10 ]", build(10, 6, 5, 3, 1).toString());
+    }
+
+    @Test
+    void testToStringOfLargeTree() {
+        Random random = new Random(9);
+        PersistentAvlTree<Integer> persistent = PersistentAvlTree.empty();
+        AvlTree<Integer> tree = new AvlTree<>();
+        for (int i = 0; i < 100_000; i++) {
+            int value = random.nextInt();
+            persistent = persistent.insert(value);
+            tree.insertNode(new Node<>(value));
+        }
+        Assertions.assertEquals(tree.toString(), persistent.toString());
+    }
+
+    @Test
+    void testOldVersionsAreUnchanged() {
+        PersistentAvlTree<Integer> snapshot = build(10, 6, 16, 3, 8, 14, 20);
+        PersistentAvlTree<Integer> inserted = snapshot.insert(1);
+        PersistentAvlTree<Integer> removed = inserted.remove(16);
+
+        Assertions.assertEquals("[[ 3 ] 6 [ 8 ]] 10 [[ 14 ] 16 [ 20 ]]", snapshot.toString());
+        Assertions.assertEquals(7, snapshot.size());
+        Assertions.assertTrue(inserted.contains(1) && inserted.contains(16));
+        Assertions.assertFalse(removed.contains(16));
+        Assertions.assertEquals(7, removed.size());
+        Assertions.assertSame(removed, removed.remove(99));
+    }
+
+    @Test
+    void testUntouchedSubtreesAreShared() {
+        PersistentAvlTree<Integer> snapshot = build(10, 6, 16, 3, 8, 14, 20);
+        PersistentAvlTree<Integer> inserted = snapshot.insert(1);
+        Assertions.assertSame(snapshot.getRoot().get().getRight().get(), inserted.getRoot().get().getRight().get());
+        Assertions.assertSame(snapshot.getRoot().get().getLeft().get().getRight().get(),
+                inserted.getRoot().get().getLeft().get().getRight().get());
+    }
+
+    @Test
+    void testRandomOperationsAgainstTreeMap() {
+        Random random = new Random(3);
+        TreeMap<Integer, Integer> counts = new TreeMap<>();
+        PersistentAvlTree<Integer> tree = PersistentAvlTree.empty();
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(300);
+            if (random.nextInt(3) == 0) {
+                tree = tree.remove(value);
+                counts.computeIfPresent(value, (key, count) -> count == 1 ? null : count - 1);
+            } else {
+                tree = tree.insert(value);
+                counts.merge(value, 1, Integer::sum);
+            }
+        }
+        Assertions.assertEquals(counts.values().stream().mapToInt(Integer::intValue).sum(), tree.size());
+        Assertions.assertTrue(tree.getRoot().get().getHeight() <= 1.44 * Math.log(tree.size()) / Math.log(2));
+        for (int value = -1; value <= 300; value++) {
+            Assertions.assertEquals(counts.containsKey(value), tree.contains(value));
+            Assertions.assertEquals(counts.floorKey(value), tree.floor(value).orElse(null));
+            Assertions.assertEquals(counts.lowerKey(value), tree.lower(value).orElse(null));
+            Assertions.assertEquals(counts.ceilingKey(value), tree.ceiling(value).orElse(null));
+            Assertions.assertEquals(counts.higherKey(value), tree.higher(value).orElse(null));
+        }
+        Assertions.assertEquals(counts.firstKey(), tree.first().get());
+        Assertions.assertEquals(counts.lastKey(), tree.last().get());
+    }
+}
@@ -0,0 +1,85 @@
+package com.dsysme.trees.avl;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Random;
+
+class SlidingWindowTest {
+
+    private static int nearestRank(List<Integer> samples, double fraction) {
+        List<Integer> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        return sorted.get(Math.max(0, (int) Math.ceil(fraction * sorted.size()) - 1));
+    }
+
+    @Test
+    void testSizeBoundedWindow() {
+        Random random = new Random(23);
+        SlidingWindow<Integer> window = SlidingWindow.ofSize(100);
+        Assertions.assertThrows(NoSuchElementException.class, window::median);
+        ArrayDeque<Integer> expected = new ArrayDeque<>();
+        for (int i = 0; i < 2000; i++) {
+            int latency = random.nextInt(1000);
+            window.add(latency);
+            expected.addLast(latency);
+            if (expected.size() > 100) {
+                expected.removeFirst();
+            }
+            if (i % 37 == 0) {
+                List<Integer> samples = new ArrayList<>(expected);
+                Assertions.assertEquals(expected.size(), window.size());
+                Assertions.assertEquals(nearestRank(samples, 0.5), window.median().intValue());
+                Assertions.assertEquals(nearestRank(samples, 0.99), window.percentile(99).intValue());
+                Assertions.assertEquals(Collections.min(samples), window.min().get());
+            }
+        }
+        Assertions.assertFalse(window.validate().isPresent());
+    }
+
+    @Test
+    void testAgeBoundedWindow() {
+        long[] now = {0};
+        SlidingWindow<Integer> window = SlidingWindow.ofAge(1000, 160, () -> now[0]);
+        for (int i = 0; i < 100; i++) {
+            now[0] = i * 10L;
+            window.add(i);
+        }
+        // at 990 the samples stamped before 830 are expired
+        Assertions.assertEquals(17, window.size());
+        Assertions.assertEquals(Optional.of(83), window.min());
+        Assertions.assertEquals(91, window.median().intValue());
+        now[0] = 2000;
+        Assertions.assertTrue(window.isEmpty());
+        window.add(5);
+        Assertions.assertEquals(5, window.median().intValue());
+
+        SlidingWindow<Integer> small = SlidingWindow.ofAge(3, 1000, () -> now[0]);
+        for (int i = 0; i < 5; i++) {
+            small.add(i);
+        }
+        Assertions.assertEquals(3, small.size());
+        Assertions.assertEquals(Optional.of(2), small.min());
+    }
+
+    @Test
+    void testTimestampWindow() {
+        long[] now = {1000};
+        // samples carry their own timestamp, the value itself here
+        SlidingWindow<Long> window = SlidingWindow.ofTimestamp(100, 50, Long::longValue, () -> now[0]);
+        for (long timestamp = 900; timestamp <= 1000; timestamp += 5) {
+            window.add(timestamp);
+        }
+        Assertions.assertEquals(11, window.size());
+        Assertions.assertEquals(Optional.of(950L), window.min());
+        Assertions.assertEquals(975L, window.median().longValue());
+        Assertions.assertEquals(5, window.rank(975L));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SlidingWindow.ofSize(0));
+    }
+}